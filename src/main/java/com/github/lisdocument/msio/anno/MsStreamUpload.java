@@ -0,0 +1,44 @@
+package com.github.lisdocument.msio.anno;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 流式上传导入，标注在接口方法上，由MsIoServlet通过commons-fileupload的流式接口逐个读取上传的文件，
+ * 文件内容直接交给流式解析器，解析与网络传输同时进行，不会保存文件的完整副本
+ * 接口方法每转换完一行调用一次，参数按类型注入：转换后的行对象（映射的实体或Map）、HttpServletRequest、HttpServletResponse，
+ * 其余参数为null，请求体只能读取一次，因此不会注入请求参数；全部文件解析完毕后返回导入的文件数及行数
+ * 容器不能提前解析multipart请求体，需要关闭spring.servlet.multipart.enabled及spring.mvc.hiddenmethod.filter.enabled
+ * @author Libin
+ * @version 1.0.2
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface MsStreamUpload {
+
+    /**
+     * 映射id，为空时根据标题自动寻找
+     * @return 映射id
+     */
+    String id() default "";
+
+    /**
+     * 导入的excel页码，小于0时导入所有页，csv文件忽略该项
+     * @return 页码
+     */
+    int pageNo() default -1;
+
+    /**
+     * 上传文件的表单字段名，为空时导入所有文件
+     * @return 表单字段名
+     */
+    String field() default "";
+
+    /**
+     * csv文件的编码，excel文件忽略该项
+     * @return 编码
+     */
+    String charset() default "UTF-8";
+}
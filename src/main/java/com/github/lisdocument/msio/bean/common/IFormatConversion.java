@@ -1,11 +1,14 @@
 package com.github.lisdocument.msio.bean.common;
 
+import com.github.lisdocument.msio.utils.DateParser;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.util.StringUtils;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Date;
 
 /**
@@ -21,35 +24,19 @@ public interface IFormatConversion {
     /**
      * 提供String类型与Date类型的格式化切换
      * @param data 待转换的数据格式
-     * @return 返回数据类型
+     * @return 返回数据类型，无法识别的格式返回new Date(0L)并输出日志；
+     * 导入时未重写该方法的日期列由ExcelRowBinder按列解析，每页结束后汇总输出失败数
      */
     default Date fromStringtoDate(String data){
         if(StringUtils.isEmpty(data)){
             return null;
         }
-        //备选格式
-        SimpleDateFormat[] alternative = new SimpleDateFormat[]{
-                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"),
-                new SimpleDateFormat("yyyy-MM-dd"),
-                new SimpleDateFormat("yyyy-MM-dd HH:mm"),
-                new SimpleDateFormat("yyyy-MM-dd HH"),
-                new SimpleDateFormat("yyyy/MM/dd HH:mm:ss"),
-                new SimpleDateFormat("yyyy/MM/dd"),
-                new SimpleDateFormat("yyyy/MM/dd HH:mm"),
-                new SimpleDateFormat("yyyy/MM/dd HH"),
-                new SimpleDateFormat("yyyy年MM月dd日 HH时mm分ss秒"),
-                new SimpleDateFormat("yyyy年MM月dd日 HH时"),
-                new SimpleDateFormat("yyyy年MM月dd日"),
-                new SimpleDateFormat("yyyy年MM月")
-        };
-        for (SimpleDateFormat sm : alternative) {
-            try {
-                return sm.parse(data);
-            } catch (ParseException e) {
-                log.error("尝试匹配日期格式，匹配失败");
-            }
+        LocalDateTime dateTime = DateParser.parseOnce(data);
+        if(null == dateTime){
+            log.error("无法识别的日期格式：" + data);
+            return new Date(0L);
         }
-        return new Date(0L);
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
     }
 
     /**
@@ -141,4 +128,45 @@ public interface IFormatConversion {
         }
         return Boolean.TRUE;
     }
+
+    /**
+     * 提供String类型转换为BigDecimal类型的方法
+     * @param data 待转换的数据
+     * @return 转换后的数据
+     */
+    default BigDecimal fromStringtoBigDecimal(String data){
+        if(StringUtils.isEmpty(data)){
+            return null;
+        }
+        try{
+            return new BigDecimal(data.trim());
+        }catch (NumberFormatException e){
+            log.error("该字符串非数字无法转换");
+            e.printStackTrace();
+        }
+        return BigDecimal.ZERO;
+    }
+
+    /**
+     * 提供String类型转换为LocalDateTime类型的方法，日期格式与fromStringtoDate一致
+     * @param data 待转换的数据
+     * @return 转换后的数据，无法识别的格式返回null
+     */
+    default LocalDateTime fromStringtoLocalDateTime(String data){
+        LocalDateTime dateTime = DateParser.parseOnce(data);
+        if(null == dateTime && !StringUtils.isEmpty(data)){
+            log.error("无法识别的日期格式：" + data);
+        }
+        return dateTime;
+    }
+
+    /**
+     * 提供String类型转换为LocalDate类型的方法，日期格式与fromStringtoDate一致
+     * @param data 待转换的数据
+     * @return 转换后的数据，无法识别的格式返回null
+     */
+    default LocalDate fromStringtoLocalDate(String data){
+        LocalDateTime dateTime = fromStringtoLocalDateTime(data);
+        return null == dateTime ? null : dateTime.toLocalDate();
+    }
 }
@@ -1,15 +1,25 @@
 package com.github.lisdocument.msio.bean.common;
 
+import com.github.lisdocument.msio.anno.MsStreamUpload;
 import com.github.lisdocument.msio.anno.MsTranslateOperator;
 import com.github.lisdocument.msio.bean.db.DownloadReword;
 import com.github.lisdocument.msio.config.AbstractStoreRecordConfigure;
 import com.github.lisdocument.msio.config.StoreRecordConfiguration;
+import com.github.lisdocument.msio.unit.CsvFactory;
+import com.github.lisdocument.msio.unit.csv.CsvImportOption;
 import com.github.lisdocument.msio.unit.excel.ExcelFactory;
+import com.github.lisdocument.msio.unit.excel.ExcelImportOption;
 import com.github.lisdocument.msio.unit.excel.IExcelBeanReverse;
+import com.github.lisdocument.msio.unit.func.RowHandler;
 import com.github.lisdocument.msio.anno.MsReturnTranslator;
 import com.github.lisdocument.msio.utils.MsELUtils;
 import com.github.lisdocument.msio.utils.MsUtils;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.StringUtils;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.async.WebAsyncManager;
 import org.springframework.web.context.request.async.WebAsyncUtils;
@@ -23,9 +33,14 @@ import org.springframework.web.util.NestedServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 文件转发接口
@@ -52,6 +67,8 @@ public class MsIoServlet extends DispatcherServlet {
 
     private static final String HTTP_HEAD = "head";
 
+    private static final String CSV_SUFFIX = ".csv";
+
     private final ServletAssessUtils servletAssessUtils = new ServletAssessUtils();
 
     @Override
@@ -69,7 +86,8 @@ public class MsIoServlet extends DispatcherServlet {
             Exception dispatchException = null;
 
             try {
-                processedRequest = checkMultipart(request);
+                //流式上传的请求体由接口边读取边解析，不能提前解析multipart
+                processedRequest = isStreamUpload(request) ? request : checkMultipart(request);
                 multipartRequestParsed = (processedRequest != request);
                 // Determine handler for the current request.
 
@@ -98,16 +116,7 @@ public class MsIoServlet extends DispatcherServlet {
                 }
                 //用户访问原路径拦截请求成功，开始解析更换后的新的请求
                 //封装一个新的请求,更改路径
-                HttpServletRequestWrapper httpServletRequestWrapper = new HttpServletRequestWrapper(request) {
-                    @Override
-                    public String getRequestURI() {
-                        String path = super.getRequestURI();
-                        path = path.substring(1);
-                        int i = path.indexOf("/");
-                        path = path.substring(i);
-                        return path;
-                    }
-                };
+                HttpServletRequestWrapper httpServletRequestWrapper = stripServletPath(request);
 
                 HandlerExecutionChain handler = getHandler(httpServletRequestWrapper);
                 if (handler == null || handler.getHandler() == null) {
@@ -123,6 +132,13 @@ public class MsIoServlet extends DispatcherServlet {
                 // transport to excel
                 //------------------------------//
                 Method invokeMethod = ((HandlerMethod) handler.getHandler()).getMethod();
+                MsStreamUpload upload = invokeMethod.getDeclaredAnnotation(MsStreamUpload.class);
+                if(upload != null){
+                    streamUpload(request, response, (HandlerMethod) handler.getHandler(), upload);
+                    servletAssessUtils.applyPostHandle(handler,httpServletRequestWrapper, response, null);
+                    servletAssessUtils.applyPostHandle(mappedHandler,processedRequest, response, null);
+                    return;
+                }
                 MsReturnTranslator translator = invokeMethod.getDeclaredAnnotation(MsReturnTranslator.class);
                 Object requestResult = servletAssessUtils.getRequestResult(request,response, handler);
 
@@ -225,4 +241,94 @@ public class MsIoServlet extends DispatcherServlet {
         }
     }
 
+    /**
+     * 封装一个新的请求，切除用于进入这个servlet的第一层url
+     * @param request 请求
+     * @return 更改路径后的请求
+     */
+    private HttpServletRequestWrapper stripServletPath(HttpServletRequest request){
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public String getRequestURI() {
+                String path = super.getRequestURI();
+                path = path.substring(1);
+                int i = path.indexOf("/");
+                path = path.substring(i);
+                return path;
+            }
+        };
+    }
+
+    /**
+     * 请求对应的接口是否为流式上传导入
+     * @param request 请求
+     * @return 是否标注了MsStreamUpload
+     * @throws Exception 获取接口失败
+     */
+    private boolean isStreamUpload(HttpServletRequest request) throws Exception {
+        //没有第二层url的请求不会被转发
+        if(!ServletFileUpload.isMultipartContent(request) || request.getRequestURI().indexOf('/', 1) < 0){
+            return false;
+        }
+        HandlerExecutionChain handler = getHandler(stripServletPath(request));
+        return handler != null && handler.getHandler() instanceof HandlerMethod
+                && ((HandlerMethod) handler.getHandler()).hasMethodAnnotation(MsStreamUpload.class);
+    }
+
+    /**
+     * 流式上传导入，通过ServletFileUpload.getItemIterator逐个读取上传的文件，文件流直接交给流式解析器，
+     * .csv结尾的文件按csv解析，其余按excel解析，每转换完一行调用一次接口方法，完成后返回导入的文件数及行数
+     * @param request 请求
+     * @param response 响应
+     * @param handlerMethod 接口方法
+     * @param upload 上传配置
+     * @throws Exception 写出响应失败
+     */
+    private void streamUpload(HttpServletRequest request, HttpServletResponse response, HandlerMethod handlerMethod, MsStreamUpload upload) throws Exception {
+        logger.info("Stream upload task is beginning");
+        long last = System.currentTimeMillis();
+        String id = StringUtils.isEmpty(upload.id()) ? null : upload.id();
+        AtomicLong rows = new AtomicLong();
+        RowHandler<Object> rowHandler = (sheetIndex, rowNum, row) -> {
+            try {
+                servletAssessUtils.invokeWithProvidedArgs(handlerMethod, row, request, response);
+            }catch (RuntimeException e){
+                throw e;
+            }catch (Exception e){
+                throw new IllegalStateException("第" + sheetIndex + "页第" + rowNum + "行处理失败", e);
+            }
+            rows.incrementAndGet();
+        };
+        int files = 0;
+        try {
+            FileItemIterator items = new ServletFileUpload().getItemIterator(request);
+            while (items.hasNext()){
+                FileItemStream item = items.next();
+                if(item.isFormField() || StringUtils.isEmpty(item.getName())
+                        || (!StringUtils.isEmpty(upload.field()) && !upload.field().equals(item.getFieldName()))){
+                    continue;
+                }
+                try (InputStream in = item.openStream()){
+                    if(item.getName().toLowerCase().endsWith(CSV_SUFFIX)){
+                        CsvFactory.readStream(in, new CsvImportOption().setId(id).setCharset(Charset.forName(upload.charset())), rowHandler);
+                    }else{
+                        ExcelFactory.readStream(in, new ExcelImportOption().setId(id)
+                                .setPageNo(upload.pageNo() < 0 ? null : upload.pageNo()), rowHandler);
+                    }
+                }
+                files ++;
+            }
+        }catch (FileUploadException | RuntimeException e){
+            logger.error("Stream upload task failed", e);
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("files", files);
+        result.put("rows", rows.get());
+        response.setContentType("application/json;charset=utf-8");
+        response.setCharacterEncoding("utf-8");
+        response.getWriter().write(CommonBean.OBJECT_MAPPER.writeValueAsString(result));
+        logger.info("Stream upload task completed in "+ (System.currentTimeMillis() - last)+" ms");
+    }
 }
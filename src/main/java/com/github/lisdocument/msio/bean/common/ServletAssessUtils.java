@@ -27,6 +27,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.util.Map;
 
@@ -103,6 +104,27 @@ final class ServletAssessUtils{
         return args;
     }
 
+    /**
+     * 只使用提供的参数调用接口，参数按类型匹配，未匹配的参数为null，不会读取请求参数
+     * @param handlerMethod 接口方法
+     * @param providedArgs 提供的参数
+     * @return 接口的返回值
+     * @throws Exception 调用失败或接口抛出的异常
+     */
+    Object invokeWithProvidedArgs(@NonNull HandlerMethod handlerMethod, Object... providedArgs) throws Exception {
+        MethodParameter[] parameters = handlerMethod.getMethodParameters();
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            args[i] = resolveProvidedArgument(parameters[i], providedArgs);
+        }
+        try {
+            return handlerMethod.getMethod().invoke(handlerMethod.getBean(), args);
+        }catch (InvocationTargetException e){
+            Throwable cause = e.getTargetException();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
     @Nullable
     private Object resolveProvidedArgument(@NonNull MethodParameter parameter, @Nullable Object... providedArgs) {
         if (providedArgs == null) {
@@ -7,8 +7,10 @@ import com.github.lisdocument.msio.bean.common.Operator;
 import com.github.lisdocument.msio.bean.common.impl.DefaultOperator;
 import com.github.lisdocument.msio.exception.UnsupportFormatException;
 import com.github.lisdocument.msio.utils.ClassUtils;
+import com.github.lisdocument.msio.utils.ImportAccessor;
 import com.github.lisdocument.msio.utils.StringRegexUtils;
-import com.google.common.collect.Lists;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Maps;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
@@ -21,12 +23,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * @author 内部映射生成方法
@@ -56,24 +58,29 @@ public class MsIoContainer {
 
     private final static String MAPPING_NAME = "name";
     /**
-     * 映射缓存池
+     * 映射缓存池，以下缓存在并行导入及热部署重新加载时会被多线程同时访问，均使用ConcurrentHashMap
      */
-    private Map<String,LinkedHashMap<String,Information>> mappingCache = Maps.newHashMapWithExpectedSize(32);
+    private Map<String,LinkedHashMap<String,Information>> mappingCache = new ConcurrentHashMap<>(32);
 
     /**
      * 复杂映射层数缓存池
      */
-    private Map<String, Integer> complexMappingCache = Maps.newHashMapWithExpectedSize(32);
+    private Map<String, Integer> complexMappingCache = new ConcurrentHashMap<>(32);
 
     /**
      * 类映射缓冲池
      */
-    private Map<String,Class> classCache = Maps.newHashMapWithExpectedSize(32);
+    private Map<String,Class> classCache = new ConcurrentHashMap<>(32);
+
+    /**
+     * 导入访问器缓冲池，映射注册时生成
+     */
+    private Map<Class<?>,ImportAccessor> accessorCache = new ConcurrentHashMap<>(32);
 
     /**
      * 对象缓冲池
      */
-    private Map<Class,Object> instanceCache = Maps.newHashMapWithExpectedSize(128);
+    private Map<Class,Object> instanceCache = new ConcurrentHashMap<>(128);
 
     /**
      * 仅有热部署被启用时才启用临时映射存储池，若热部署标志为true的情况下，所有通过配置文件引入的对象映射会被驻留在此处，
@@ -82,6 +89,30 @@ public class MsIoContainer {
      */
     private ConcurrentHashMap<String,LinkedHashMap<String,Information>> temporaryMappingCache = new ConcurrentHashMap<>();
 
+    /**
+     * 映射的版本号，映射池变化时递增，匹配索引的版本号与之不同时重建
+     */
+    private volatile long mappingVersion;
+
+    private volatile MatchIndex matchIndex;
+
+    /**
+     * 文件系统中的配置文件，定位到之后不再重复定位，位于jar中或者尚不存在时为null，之后每次加载时重新定位
+     */
+    private File jsonFile;
+
+    /**
+     * 配置文件上次加载时的修改时间及长度，未变化时热部署跳过重新加载
+     */
+    private long jsonModified = -1;
+
+    private long jsonLength = -1;
+
+    /**
+     * 配置文件在jar包中时内容不会变化，只需加载一次
+     */
+    private boolean jsonLoaded;
+
     /**
      * 推荐方式
      * @param iTransFunctionContainer 转出格式转换器
@@ -119,50 +150,80 @@ public class MsIoContainer {
     }
 
     /**
-     * 遍历匹配获取映射,仅允许数据(中文数据匹配)
+     * 遍历匹配获取映射,仅允许数据(中文数据匹配)，
+     * 使用倒排索引（名称->映射位图）求交集，索引在映射变化后的首次匹配时重建
      * @param titles 需要被匹配的头
      * @param isEg 是否英文匹配项
-     * @return 返回映射
+     * @return 返回映射，多个映射同时匹配时优先返回配置文件中的映射
      */
-    @SuppressWarnings("all")
     public String match(Collection<String> titles,boolean isEg){
-        Map<String, LinkedHashMap<String,Information>> allRewords = new HashMap<>(16);
         if(hotDeploySign){
             initJson();
-            allRewords.putAll(mappingCache);
-            allRewords.putAll(temporaryMappingCache);
-        }else{
-            allRewords = mappingCache;
         }
-        //删除复杂的映射
-        for (String key : complexMappingCache.keySet()) {
-            allRewords.remove(key);
+        MatchIndex index = matchIndex;
+        if(null == index || index.version != mappingVersion){
+            index = buildMatchIndex();
         }
-        List<String> keys = new ArrayList<>();
-        for (String key : allRewords.keySet()) {
-            LinkedHashMap<String, Information> value = allRewords.get(key);
-            List<String> datum = null;
-            //获取比较项
-            if(!isEg) {
-                datum = value.values().stream().map(Information::getName).collect(Collectors.toList());
-            }else{
-                datum = Lists.newArrayList(value.keySet());
-            }
-            long count = titles.parallelStream().filter(datum::contains).count();
-            if(count != titles.size()){
+        return index.match(titles, isEg);
+    }
+
+    /**
+     * 根据多级标题的第一行匹配复杂映射，复杂映射不在匹配索引中且数量较少，逐个比较第一层的名称
+     * @param titles 多级标题的第一行，合并单元格只取左上角的值
+     * @return 第一层名称全部出现在标题中的映射，多个映射同时匹配时返回第一层名称最多的映射，找不到返回null
+     */
+    public String matchComplex(Collection<String> titles){
+        if(hotDeploySign){
+            initJson();
+        }
+        Set<String> names = new HashSet<>(titles);
+        String result = null;
+        int best = 0;
+        for (String key : complexMappingCache.keySet()) {
+            LinkedHashMap<String, Information> mapping = get(key);
+            if(null == mapping || mapping.size() <= best){
                 continue;
             }
-            keys.add(key);
+            boolean matched = true;
+            for (Information information : mapping.values()) {
+                if(!names.contains(information.getName())){
+                    matched = false;
+                    break;
+                }
+            }
+            if(matched){
+                result = key;
+                best = mapping.size();
+            }
         }
-        if(keys.size() == 1){
-            return keys.get(0);
-        }else if(keys.size() > 1){
-            //如果匹配的数据大于
-            Set<String> classKeys = classCache.keySet();
-            return keys.stream().sorted((k1,k2) -> (classKeys.contains(k1) ? 1 : -1)).limit(1).collect(Collectors.toList()).get(0);
-        }else{
-            return null;
+        return result;
+    }
+
+    /**
+     * 映射发生变化，匹配索引失效
+     */
+    private void mappingChanged(){
+        mappingVersion ++;
+    }
+
+    /**
+     * 根据当前的映射重建匹配索引，复杂映射不参与匹配
+     * @return 新的索引
+     */
+    private synchronized MatchIndex buildMatchIndex(){
+        MatchIndex index = matchIndex;
+        long version = mappingVersion;
+        if(null != index && index.version == version){
+            return index;
+        }
+        Map<String, LinkedHashMap<String,Information>> allRewords = new LinkedHashMap<>(mappingCache);
+        allRewords.putAll(temporaryMappingCache);
+        for (String key : complexMappingCache.keySet()) {
+            allRewords.remove(key);
         }
+        index = new MatchIndex(version, allRewords, classCache.keySet());
+        matchIndex = index;
+        return index;
     }
 
     /**
@@ -171,6 +232,9 @@ public class MsIoContainer {
      * @return 深度
      */
     public int getDepthLevel(String key){
+        if(null == key){
+            return 1;
+        }
         return complexMappingCache.getOrDefault(key,1);
     }
 
@@ -191,6 +255,15 @@ public class MsIoContainer {
         return classCache.getOrDefault(key, Map.class);
     }
 
+    /**
+     * 获取类的导入访问器，映射注册时已经生成，未注册的类在首次获取时生成
+     * @param clazz 类
+     * @return 访问器
+     */
+    public ImportAccessor getAccessor(Class<?> clazz){
+        return accessorCache.computeIfAbsent(clazz, ImportAccessor::new);
+    }
+
     /**
      * 根据类的Class文件获取映射
      * @param key Class对象
@@ -281,18 +354,47 @@ public class MsIoContainer {
     }
 
     /**
-     * 配置文件的加载
+     * 配置文件的加载，热部署时每次匹配前调用，文件的修改时间及长度未变化时跳过，
+     * 尚未定位到文件系统中的配置文件时每次重新定位，热部署过程中新增的配置文件同样会被加载，
+     * 打包在jar中的配置文件只处理一次
      */
-    private void initJson(){
+    private synchronized void initJson(){
         String jsonMapper;
+        if(null == jsonFile){
+            try {
+                //获取文件外的配置文件，类加载器的资源名不能以分隔符开头
+                jsonFile = ResourceUtils.getFile(ResourceUtils.CLASSPATH_URL_PREFIX + FILE_NAME);
+            } catch (FileNotFoundException e) {
+                //位于jar中或者尚不存在
+                jsonFile = null;
+            }
+        }
+        File file = jsonFile;
         try {
-            //获取文件外的配置文件
-            File file = ResourceUtils.getFile("classpath:" + File.separator + FILE_NAME);
-            if(file.exists()){
-                jsonMapper = IOUtils.toString(new FileInputStream(file));
+            if(null != file && file.exists()){
+                long modified = file.lastModified();
+                long length = file.length();
+                if(modified == jsonModified && length == jsonLength){
+                    return;
+                }
+                try (InputStream in = new FileInputStream(file)){
+                    jsonMapper = IOUtils.toString(in);
+                }
+                jsonModified = modified;
+                jsonLength = length;
             }else {
+                if(jsonLoaded){
+                    return;
+                }
+                jsonLoaded = true;
                 //若文件外无数据则应用文件内的数据
-                jsonMapper = IOUtils.toString(this.getClass().getResourceAsStream(File.separator + FILE_NAME));
+                try (InputStream in = this.getClass().getResourceAsStream(File.separator + FILE_NAME)){
+                    if(null == in){
+                        log.info("未找到" + FILE_NAME + "，默认用户不需要配置操作，初始化配置文件操作跳过");
+                        return;
+                    }
+                    jsonMapper = IOUtils.toString(in);
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -345,6 +447,7 @@ public class MsIoContainer {
                     clazz.getName() + "||" + classCache.get(operator.value()).getName());
         }
         classCache.put(operator.value(),clazz);
+        getAccessor(clazz);
 
         LinkedHashMap<String,Information> mappingItem = new LinkedHashMap<>();
         Field[] fields = clazz.getDeclaredFields();
@@ -397,6 +500,7 @@ public class MsIoContainer {
         //计算层数
         int depthLevel = checkDepthLevel(mappingItem, 1);
         complexMappingCache.put(operator.value(),depthLevel);
+        mappingChanged();
         return true;
     }
 
@@ -435,6 +539,7 @@ public class MsIoContainer {
                     clazz.getName() + "||" + classCache.get(msOperator.value()).getName());
         }
         classCache.put(msOperator.value(),clazz);
+        getAccessor(clazz);
 
         LinkedHashMap<String,Information> mappingItem = new LinkedHashMap<>();
 
@@ -470,6 +575,7 @@ public class MsIoContainer {
         }
 
         mappingCache.put(msOperator.value(),mappingItem);
+        mappingChanged();
         return true;
     }
 
@@ -515,6 +621,7 @@ public class MsIoContainer {
         if(jsonData.containsKey(CLASS_LABEL)){
             pojo = Class.forName(jsonData.remove(CLASS_LABEL).toString());
             classCache.put(key.toString(),pojo);
+            getAccessor(pojo);
         }
         LinkedHashMap<String,Information> mappingItem = Maps.newLinkedHashMapWithExpectedSize(16);
         //网上求证数据项标明顺序正常
@@ -588,6 +695,7 @@ public class MsIoContainer {
             }
             mappingCache.put(key.toString(),mappingItem);
         }
+        mappingChanged();
     }
 
     /**
@@ -612,6 +720,7 @@ public class MsIoContainer {
         if(information.containsKey(CLASS_LABEL)){
             pojo = Class.forName(information.remove(CLASS_LABEL).toString());
             classCache.put(key,pojo);
+            getAccessor(pojo);
         }
         //网上求证数据项标明顺序正常
         for (Object egName : information.keySet()) {
@@ -648,6 +757,121 @@ public class MsIoContainer {
             }
             mappingCache.put(key,mappingItem);
         }
+        mappingChanged();
+    }
+
+    /**
+     * 标题匹配的倒排索引，中文名称及英文字段名分别映射到包含该名称的映射位图，
+     * 匹配时对所有标题的位图求交集，构建后不再修改，映射变化时整体重建，
+     * 匹配结果按标题签名（排序后的标题及是否英文匹配）缓存在索引中，随索引一同失效
+     */
+    private static final class MatchIndex {
+
+        /**
+         * 标题签名缓存的容量
+         */
+        private static final int SIGNATURE_CACHE_SIZE = 1024;
+
+        private final long version;
+
+        /**
+         * 标题签名到匹配结果的缓存，未匹配到的签名同样缓存
+         */
+        private final Cache<String, Optional<String>> signatures = CacheBuilder.newBuilder()
+                .maximumSize(SIGNATURE_CACHE_SIZE).build();
+
+        /**
+         * 位图下标对应的映射id
+         */
+        private final String[] ids;
+
+        private final Map<String, BitSet> names;
+
+        private final Map<String, BitSet> keys;
+
+        /**
+         * 使用Pojo类的映射
+         */
+        private final BitSet classIds = new BitSet();
+
+        private MatchIndex(long version, Map<String, LinkedHashMap<String, Information>> mappings, Set<String> classKeys) {
+            this.version = version;
+            this.ids = mappings.keySet().toArray(new String[0]);
+            this.names = new HashMap<>(mappings.size() * 16);
+            this.keys = new HashMap<>(mappings.size() * 16);
+            for (int i = 0; i < ids.length; i++) {
+                for (Map.Entry<String, Information> entry : mappings.get(ids[i]).entrySet()) {
+                    keys.computeIfAbsent(entry.getKey(), k -> new BitSet(ids.length)).set(i);
+                    names.computeIfAbsent(entry.getValue().getName(), k -> new BitSet(ids.length)).set(i);
+                }
+                if(classKeys.contains(ids[i])){
+                    classIds.set(i);
+                }
+            }
+        }
+
+        private String match(Collection<String> titles, boolean isEg){
+            String signature = signature(titles, isEg);
+            if(null == signature){
+                return null;
+            }
+            Optional<String> cached = signatures.getIfPresent(signature);
+            if(null == cached){
+                cached = Optional.ofNullable(intersect(titles, isEg));
+                signatures.put(signature, cached);
+            }
+            return cached.orElse(null);
+        }
+
+        /**
+         * 标题签名，与标题的顺序及重复无关
+         * @param titles 标题
+         * @param isEg 是否英文匹配
+         * @return 签名，标题中存在null时不可能匹配，返回null
+         */
+        private static String signature(Collection<String> titles, boolean isEg){
+            String[] sorted = new String[titles.size()];
+            int size = 0;
+            int length = 2;
+            for (String title : titles) {
+                if(null == title){
+                    return null;
+                }
+                sorted[size ++] = title;
+                length += title.length() + 1;
+            }
+            Arrays.sort(sorted, 0, size);
+            StringBuilder builder = new StringBuilder(length).append(isEg ? 'E' : 'C');
+            String last = null;
+            for (int i = 0; i < size; i++) {
+                if(!sorted[i].equals(last)){
+                    builder.append('\u0000').append(sorted[i]);
+                    last = sorted[i];
+                }
+            }
+            return builder.toString();
+        }
+
+        private String intersect(Collection<String> titles, boolean isEg){
+            Map<String, BitSet> index = isEg ? keys : names;
+            BitSet result = new BitSet(ids.length);
+            result.set(0, ids.length);
+            for (String title : titles) {
+                BitSet matched = index.get(title);
+                if(null == matched){
+                    return null;
+                }
+                result.and(matched);
+                if(result.isEmpty()){
+                    return null;
+                }
+            }
+            //同时匹配多个映射时优先使用配置文件中的映射
+            BitSet preferred = (BitSet) result.clone();
+            preferred.andNot(classIds);
+            int first = preferred.isEmpty() ? result.nextSetBit(0) : preferred.nextSetBit(0);
+            return -1 == first ? null : ids[first];
+        }
     }
 
     /**
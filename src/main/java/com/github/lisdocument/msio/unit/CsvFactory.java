@@ -1,4 +1,478 @@
 package com.github.lisdocument.msio.unit;
 
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.unit.csv.CsvImportOption;
+import com.github.lisdocument.msio.unit.csv.CsvReader;
+import com.github.lisdocument.msio.unit.csv.CsvRecordListener;
+import com.github.lisdocument.msio.unit.csv.CsvSplitter;
+import com.github.lisdocument.msio.unit.excel.ExcelRowBinder;
+import com.github.lisdocument.msio.unit.excel.RowDeduplicator;
+import com.github.lisdocument.msio.unit.func.RowHandler;
+import com.github.lisdocument.msio.utils.SpringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Created with IntelliJ IDEA.
+ * csv文件的处理工厂，流式读取，第一条非空记录为标题行，通过MsIoContainer.match匹配映射，
+ * 之后每条记录使用与excel导入相同的转换规则转换，结果以List返回或者逐行交给RowHandler（页码恒为0），
+ * 文件导入可以开启并行模式，按记录边界切块后在线程池中并行解析和转换
+ * @author Libin
+ * @version 1.0.2
+ */
+@SuppressWarnings("unused")
 public class CsvFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvFactory.class);
+
+    /**
+     * 读取csv文件的全部数据
+     * @param file 文件
+     * @return 转换结果
+     */
+    public static List<Object> read(@NotNull File file){
+        return read(file, new CsvImportOption());
+    }
+
+    /**
+     * 读取csv文件的全部数据
+     * @param file 文件
+     * @param option 配置项
+     * @return 转换结果
+     */
+    public static List<Object> read(@NotNull File file, @NotNull CsvImportOption option){
+        List<Object> result = new ArrayList<>();
+        readStream(file, option, (sheetIndex, rowNum, row) -> result.add(row));
+        return result;
+    }
+
+    /**
+     * 读取上传的csv文件的全部数据
+     * @param file 文件
+     * @param option 配置项
+     * @return 转换结果
+     */
+    public static List<Object> read(@NotNull MultipartFile file, @NotNull CsvImportOption option){
+        List<Object> result = new ArrayList<>();
+        readStream(file, option, (sheetIndex, rowNum, row) -> result.add(row));
+        return result;
+    }
+
+    /**
+     * 读取输入流中的全部数据
+     * @param in 输入流，不会被关闭
+     * @param option 配置项
+     * @return 转换结果
+     */
+    public static List<Object> read(@NotNull InputStream in, @NotNull CsvImportOption option){
+        List<Object> result = new ArrayList<>();
+        readStream(in, option, (sheetIndex, rowNum, row) -> result.add(row));
+        return result;
+    }
+
+    /**
+     * 流式逐行导入csv文件，映射根据标题行自动匹配
+     * @param file 文件
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 交付的行数
+     * @throws IllegalStateException 记录转换失败时中断导入，见readStream(File, CsvImportOption, RowHandler)
+     */
+    public static <T> long readStream(@NotNull File file, @NotNull RowHandler<T> handler){
+        return readStream(file, new CsvImportOption(), handler);
+    }
+
+    /**
+     * 流式逐行导入csv文件，文件通过内存映射读取
+     * 与excel的流式导入不同，csv只有一页，标题行匹配的映射缺少转换方法或某条记录转换失败时直接抛出异常中断导入，
+     * 不会记录失败后继续；失败记录之前的记录已经交给RowHandler（并行无序交付时其他块中之后的记录也可能已经交付）
+     * @param file 文件
+     * @param option 配置项
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 交付的行数
+     * @throws IllegalArgumentException 文件无法读取，或标题行匹配的映射缺少转换方法
+     * @throws IllegalStateException 记录转换失败，异常信息中包含记录的行号
+     */
+    public static <T> long readStream(@NotNull File file, @NotNull CsvImportOption option, @NotNull RowHandler<T> handler){
+        if(option.isParallel() && CsvSplitter.isSplittable(option.getCharset())){
+            return new ParallelImport(option, handler).run(file);
+        }
+        RecordDispatcher dispatcher = new RecordDispatcher(option, handler);
+        try {
+            newReader(option).read(file, dispatcher);
+            dispatcher.report();
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试", e);
+        }finally {
+            dispatcher.close();
+        }
+        return dispatcher.delivered;
+    }
+
+    /**
+     * 流式逐行导入上传的csv文件
+     * @param file 文件
+     * @param option 配置项
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 交付的行数
+     * @throws IllegalStateException 记录转换失败时中断导入，见readStream(File, CsvImportOption, RowHandler)
+     */
+    public static <T> long readStream(@NotNull MultipartFile file, @NotNull CsvImportOption option, @NotNull RowHandler<T> handler){
+        try (InputStream in = file.getInputStream()){
+            return readStream(in, option, handler);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入", e);
+        }
+    }
+
+    /**
+     * 流式逐行导入输入流
+     * @param in 输入流，不会被关闭
+     * @param option 配置项
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 交付的行数
+     * @throws IllegalStateException 记录转换失败时中断导入，见readStream(File, CsvImportOption, RowHandler)
+     */
+    public static <T> long readStream(@NotNull InputStream in, @NotNull CsvImportOption option, @NotNull RowHandler<T> handler){
+        RecordDispatcher dispatcher = new RecordDispatcher(option, handler);
+        try {
+            newReader(option).read(in, dispatcher);
+            dispatcher.report();
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入", e);
+        }finally {
+            dispatcher.close();
+        }
+        return dispatcher.delivered;
+    }
+
+    private static CsvReader newReader(CsvImportOption option){
+        return new CsvReader(option.getDelimiter(), option.getCharset());
+    }
+
+    /**
+     * 记录的分发，第一条记录作为标题行创建绑定器，之后的记录去重、转换后交给RowHandler
+     */
+    private static final class RecordDispatcher implements CsvRecordListener {
+
+        private final MsIoContainer msIoContainer = SpringUtils.getBean(MsIoContainer.class);
+
+        private final IFormatConversion formatConversion = SpringUtils.getBean(IFormatConversion.class);
+
+        private final String id;
+
+        private final RowHandler<Object> handler;
+
+        /**
+         * 重复行过滤，为null时不去重
+         */
+        private final RowDeduplicator distinct;
+
+        /**
+         * 列投影，为null时读取全部列
+         */
+        private final List<String> projection;
+
+        /**
+         * 标题行之后需要读取的字段，为null时读取全部字段
+         */
+        private BitSet columns;
+
+        private ExcelRowBinder binder;
+
+        private long delivered;
+
+        @SuppressWarnings("unchecked")
+        private RecordDispatcher(CsvImportOption option, RowHandler<?> handler) {
+            this.id = StringUtils.isEmpty(option.getId()) ? null : option.getId();
+            this.handler = (RowHandler<Object>) handler;
+            this.distinct = RowDeduplicator.of(option.getDistinct(), option.getDistinctMemory());
+            this.projection = option.getProjection();
+        }
+
+        @Override
+        public BitSet columns() {
+            return columns;
+        }
+
+        @Override
+        public void record(int rowNum, List<String> values) {
+            if(null == binder){
+                List<String> titles = new ArrayList<>(values.size());
+                for (String value : values) {
+                    titles.add(StringUtils.isEmpty(value) || "".equals(value.trim()) ? null : value);
+                }
+                try {
+                    binder = ExcelRowBinder.build(msIoContainer, formatConversion, id, null == id, titles, projection);
+                }catch (NoSuchMethodException e){
+                    throw new IllegalArgumentException("标题行匹配的映射缺少转换方法", e);
+                }
+                if(null == binder.getId()){
+                    log.info("csv标题行未匹配到映射，按Map导入");
+                }
+                if(null != distinct){
+                    try {
+                        //投影之外的去重字段不在绑定计划中，按去重字段另外生成计划确定其列号
+                        distinct.bind(null == projection || distinct.getKeys().isEmpty() ? binder
+                                : ExcelRowBinder.build(msIoContainer, formatConversion, binder.getId(), false, titles, distinct.getKeys()));
+                    }catch (NoSuchMethodException e){
+                        throw new IllegalArgumentException("标题行匹配的映射缺少转换方法", e);
+                    }
+                }
+                if(null != projection){
+                    columns = binder.getColumns();
+                    if(null != distinct){
+                        distinct.project(columns);
+                    }
+                }
+                return;
+            }
+            if(null != distinct && !distinct.add(values)){
+                return;
+            }
+            Object bean;
+            try {
+                bean = binder.bind(values);
+            }catch (NoSuchMethodException | RuntimeException e){
+                throw new IllegalStateException("第" + (rowNum + 1) + "条记录转换失败", e);
+            }
+            handler.handle(0, rowNum, bean);
+            delivered ++;
+        }
+
+        private void report(){
+            if(null != binder){
+                binder.report();
+            }
+            if(null != distinct){
+                distinct.report();
+            }
+        }
+
+        /**
+         * 删除去重指纹溢出的临时文件
+         */
+        private void close(){
+            if(null != distinct){
+                distinct.close();
+            }
+        }
+    }
+
+    /**
+     * 并行导入：先顺序读取标题行生成绑定器，其余部分由CsvSplitter切分为对齐到记录边界的块，
+     * 每块在线程池中独立解析和转换，同时处理中的块数不超过queueCapacity，
+     * 有序交付时调用线程按块的顺序将转换结果交给RowHandler，无序交付时RowHandler直接在线程池中调用
+     * 去重时指纹在线程池中计算，有序交付时在调用线程中按顺序过滤以保留第一次出现的行，无序交付时保留先解析到的行
+     */
+    private static final class ParallelImport {
+
+        private final CsvImportOption option;
+
+        private final Executor executor;
+
+        private final RowHandler<Object> handler;
+
+        private final RecordDispatcher header;
+
+        private ExcelRowBinder binder;
+
+        /**
+         * 重复行过滤，与标题行共用，为null时不去重
+         */
+        private RowDeduplicator distinct;
+
+        /**
+         * 出错后通知仍在解析的块终止
+         */
+        private volatile boolean aborted;
+
+        @SuppressWarnings("unchecked")
+        private ParallelImport(CsvImportOption option, RowHandler<?> handler) {
+            this.option = option;
+            this.executor = option.getExecutor();
+            this.handler = (RowHandler<Object>) handler;
+            this.header = new RecordDispatcher(option, handler);
+        }
+
+        private long run(File file){
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                 FileChannel channel = randomAccessFile.getChannel()){
+                long size = channel.size();
+                //标题行之前可能有空行
+                long dataStart = 0;
+                int firstRowNum = 0;
+                while (null == header.binder && dataStart < size){
+                    dataStart = CsvSplitter.nextRecordEnd(channel, dataStart);
+                    firstRowNum = newReader(option).read(channel, 0, dataStart, 0, header);
+                }
+                binder = header.binder;
+                distinct = header.distinct;
+                if(null == binder || dataStart >= size){
+                    return 0;
+                }
+                List<CsvSplitter.Chunk> chunks = CsvSplitter.split(channel, dataStart, option.getBlockSize(), firstRowNum, executor);
+                long delivered = deliver(channel, chunks);
+                header.report();
+                return delivered;
+            }catch (IOException e){
+                throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试", e);
+            }finally {
+                header.close();
+            }
+        }
+
+        private long deliver(FileChannel channel, List<CsvSplitter.Chunk> chunks){
+            Deque<CompletableFuture<Parsed>> pending = new ArrayDeque<>(option.getQueueCapacity());
+            int next = 0;
+            long delivered = 0;
+            try {
+                while (next < chunks.size() || !pending.isEmpty()){
+                    while (next < chunks.size() && pending.size() < option.getQueueCapacity()){
+                        CsvSplitter.Chunk chunk = chunks.get(next ++);
+                        pending.add(CompletableFuture.supplyAsync(() -> parse(channel, chunk), executor));
+                    }
+                    Parsed parsed = pending.poll().join();
+                    if(option.isOrdered()){
+                        for (int i = 0; i < parsed.count; i++) {
+                            if(null != distinct && !distinct.add(parsed.fingerprints[i])){
+                                continue;
+                            }
+                            handler.handle(0, parsed.rowNums[i], parsed.beans[i]);
+                            delivered ++;
+                        }
+                    }else{
+                        delivered += parsed.count;
+                    }
+                    if(null != parsed.error){
+                        throw parsed.error;
+                    }
+                }
+                return delivered;
+            }finally {
+                if(!pending.isEmpty()){
+                    //等待剩余的块结束，保证返回后RowHandler不会再被调用，通道关闭前不再读取
+                    aborted = true;
+                    for (CompletableFuture<Parsed> future : pending) {
+                        future.handle((parsed, e) -> null).join();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 在线程池中解析并转换一块，出错时保留之前的结果，与单线程导入一致
+         */
+        private Parsed parse(FileChannel channel, CsvSplitter.Chunk chunk){
+            Parsed parsed = new Parsed(option.isOrdered(), null != distinct);
+            try {
+                newReader(option).read(channel, chunk.getStart(), chunk.getEnd(), chunk.getFirstRowNum(), new CsvRecordListener() {
+                    @Override
+                    public BitSet columns() {
+                        return header.columns;
+                    }
+
+                    @Override
+                    public void record(int rowNum, List<String> values) {
+                        convert(parsed, rowNum, values);
+                    }
+                });
+            }catch (IOException e){
+                parsed.error = new IllegalArgumentException("文件不存在或格式不匹配，检查后重试", e);
+            }catch (RuntimeException e){
+                parsed.error = e;
+            }
+            return parsed;
+        }
+
+        /**
+         * 去重并转换一条记录
+         */
+        private void convert(Parsed parsed, int rowNum, List<String> values){
+            if(aborted){
+                throw new IllegalStateException("并行导入已被终止");
+            }
+            long fingerprint = 0;
+            if(null != distinct){
+                fingerprint = distinct.fingerprint(values);
+                if(!option.isOrdered() && !distinct.add(fingerprint)){
+                    return;
+                }
+            }
+            Object bean;
+            try {
+                bean = binder.bind(values);
+            }catch (NoSuchMethodException | RuntimeException e){
+                throw new IllegalStateException("第" + (rowNum + 1) + "条记录转换失败", e);
+            }
+            if(option.isOrdered()){
+                parsed.add(rowNum, bean, fingerprint);
+            }else{
+                handler.handle(0, rowNum, bean);
+                parsed.count ++;
+            }
+        }
+    }
+
+    /**
+     * 一块的转换结果，无序交付时只记录交付的行数，去重时同时记录每行的指纹
+     */
+    private static final class Parsed {
+
+        private int[] rowNums;
+
+        private Object[] beans;
+
+        private long[] fingerprints;
+
+        private int count;
+
+        private RuntimeException error;
+
+        private Parsed(boolean keep, boolean distinct) {
+            if(keep){
+                this.rowNums = new int[256];
+                this.beans = new Object[256];
+                if(distinct){
+                    this.fingerprints = new long[256];
+                }
+            }
+        }
+
+        private void add(int rowNum, Object bean, long fingerprint){
+            if(count == beans.length){
+                rowNums = Arrays.copyOf(rowNums, count * 2);
+                beans = Arrays.copyOf(beans, count * 2);
+                if(null != fingerprints){
+                    fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                }
+            }
+            rowNums[count] = rowNum;
+            if(null != fingerprints){
+                fingerprints[count] = fingerprint;
+            }
+            beans[count ++] = bean;
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package com.github.lisdocument.msio.unit.csv;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Created with IntelliJ IDEA.
+ * csv导入的配置项
+ * @author Libin
+ * @version 1.0.2
+ */
+public class CsvImportOption {
+
+    /**
+     * 指定的映射id，为空则根据标题行自动匹配
+     */
+    private String id;
+
+    /**
+     * 文件编码，默认UTF-8，文件开头的BOM会被忽略
+     */
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /**
+     * 字段分隔符，默认为逗号
+     */
+    private char delimiter = ',';
+
+    /**
+     * 是否启用并行导入：文件切分为对齐到记录边界的块，在线程池中并行解析和转换，
+     * 仅对文件导入且编码满足CsvSplitter.isSplittable时生效，其余情况按单线程导入
+     */
+    private boolean parallel;
+
+    /**
+     * 并行导入使用的线程池，为null时使用ForkJoinPool.commonPool()
+     */
+    private Executor executor;
+
+    /**
+     * 并行导入时每块的字节数
+     */
+    private long blockSize = 8 * 1024 * 1024;
+
+    /**
+     * 并行导入时同时处理中的块数，有序交付时已转换未交付的数据最多为这么多块
+     */
+    private int queueCapacity = 8;
+
+    /**
+     * 并行导入时是否按文件中的顺序交付，为false时RowHandler在线程池中被并发调用，需要自行保证线程安全
+     */
+    private boolean ordered = true;
+
+    /**
+     * 去重字段（映射中的英文名称，无映射时为标题，与投影一致），为null时不去重，为空时整行去重；去重字段相同的行只保留第一次出现的一行，
+     * 同一映射的各页共用指纹，不同映射的页互不影响，缺少去重字段的页不去重，去重在转换之前根据原始字符串进行
+     */
+    private List<String> distinct;
+
+    /**
+     * 每个映射的去重指纹在内存中的上限（字节），超过后溢出到临时文件，为0时不溢出
+     */
+    private long distinctMemory = 64L * 1024 * 1024;
+
+    /**
+     * 列投影，需要绑定的字段（映射中的英文名称，无映射时为标题），为null时读取全部列，为空时只读取有映射的列，
+     * 其余列在解析时直接跳过，不做字符串及格式转换；同时去重时去重列始终读取，整行去重只比较读取的列
+     */
+    private List<String> projection;
+
+    public String getId() {
+        return id;
+    }
+
+    public CsvImportOption setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public CsvImportOption setCharset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    public CsvImportOption setDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public CsvImportOption setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return null == executor ? ForkJoinPool.commonPool() : executor;
+    }
+
+    public CsvImportOption setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public long getBlockSize() {
+        return blockSize;
+    }
+
+    public CsvImportOption setBlockSize(long blockSize) {
+        if(blockSize <= 0){
+            throw new IllegalArgumentException("blockSize必须大于0");
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public CsvImportOption setQueueCapacity(int queueCapacity) {
+        if(queueCapacity <= 0){
+            throw new IllegalArgumentException("queueCapacity必须大于0");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public CsvImportOption setOrdered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    public List<String> getDistinct() {
+        return distinct;
+    }
+
+    public CsvImportOption setDistinct(String... distinct) {
+        this.distinct = null == distinct ? null : Arrays.asList(distinct);
+        return this;
+    }
+
+    public List<String> getProjection() {
+        return projection;
+    }
+
+    public CsvImportOption setProjection(String... projection) {
+        this.projection = null == projection ? null : Arrays.asList(projection);
+        return this;
+    }
+
+    public long getDistinctMemory() {
+        return distinctMemory;
+    }
+
+    public CsvImportOption setDistinctMemory(long distinctMemory) {
+        if(distinctMemory < 0){
+            throw new IllegalArgumentException("distinctMemory必须不小于0");
+        }
+        this.distinctMemory = distinctMemory;
+        return this;
+    }
+}
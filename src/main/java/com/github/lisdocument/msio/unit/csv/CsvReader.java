@@ -0,0 +1,292 @@
+package com.github.lisdocument.msio.unit.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * csv的流式读取器，文件通过FileChannel.map分段映射读取，输入流通过复用的直接缓冲区读取，
+ * 字节使用同一个CharsetDecoder解码到复用的字符缓冲区，再由状态机切分为记录，内存占用与文件大小无关，
+ * 支持双引号包裹的字段、字段内的转义引号("")、分隔符及换行，换行支持\n、\r\n及\r
+ * 读取器不是线程安全的，每次读取使用一个实例
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class CsvReader {
+
+    /**
+     * 每次映射的文件窗口大小
+     */
+    private static final int MAP_WINDOW = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char QUOTE = '"';
+
+    private static final char BOM = '\uFEFF';
+
+    private static final byte FIELD_START = 0;
+
+    private static final byte UNQUOTED = 1;
+
+    private static final byte QUOTED = 2;
+
+    private static final byte QUOTE_IN_QUOTED = 3;
+
+    private final char delimiter;
+
+    private final CharsetDecoder decoder;
+
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+    private final StringBuilder field = new StringBuilder(64);
+
+    private CsvRecordListener listener;
+
+    private List<String> values;
+
+    /**
+     * 当前记录需要读取的字段，为null时读取全部字段
+     */
+    private BitSet columns;
+
+    private byte state;
+
+    /**
+     * 当前记录中出现过加引号的字段，只有一个""字段的记录不是空行
+     */
+    private boolean quoted;
+
+    /**
+     * 上一个字符为作为换行的\r，紧随的\n忽略
+     */
+    private boolean afterCarriageReturn;
+
+    private boolean started;
+
+    private int rowNum;
+
+    private int lastWidth = 16;
+
+    /**
+     * @param delimiter 分隔符
+     * @param charset 文件编码
+     */
+    public CsvReader(char delimiter, Charset charset) {
+        if(QUOTE == delimiter || '\r' == delimiter || '\n' == delimiter){
+            throw new IllegalArgumentException("分隔符不能为引号或换行符");
+        }
+        this.delimiter = delimiter;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * 分段映射读取文件
+     * @param file 文件
+     * @param listener 记录监听器
+     * @throws IOException 读取失败
+     */
+    public void read(File file, CsvRecordListener listener) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()){
+            read(channel, 0, channel.size(), 0, listener);
+        }
+    }
+
+    /**
+     * 分段映射读取文件中的一段，用于并行解析，区间的起止位置必须位于记录边界上
+     * @param channel 文件通道，不会被关闭
+     * @param from 起始位置（含）
+     * @param to 结束位置（不含）
+     * @param firstRowNum 区间内第一行的行号，从文件开头读取时为0，文件开头的BOM会被忽略
+     * @param listener 记录监听器
+     * @return 区间之后下一行的行号，行号包括空行
+     * @throws IOException 读取失败
+     */
+    public int read(FileChannel channel, long from, long to, int firstRowNum, CsvRecordListener listener) throws IOException {
+        reset(listener);
+        started = from > 0;
+        rowNum = firstRowNum;
+        long position = from;
+        while (position < to){
+            long length = Math.min(MAP_WINDOW, to - position);
+            boolean endOfInput = position + length == to;
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            decode(bytes, endOfInput);
+            //窗口末尾不完整的多字节字符留在下一个窗口中
+            position += bytes.position();
+        }
+        finish();
+        return rowNum;
+    }
+
+    /**
+     * 通过直接缓冲区读取输入流
+     * @param in 输入流，不会被关闭
+     * @param listener 记录监听器
+     * @throws IOException 读取失败
+     */
+    public void read(InputStream in, CsvRecordListener listener) throws IOException {
+        reset(listener);
+        ReadableByteChannel channel = Channels.newChannel(in);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        boolean endOfInput = false;
+        while (!endOfInput){
+            endOfInput = channel.read(bytes) < 0;
+            bytes.flip();
+            decode(bytes, endOfInput);
+            bytes.compact();
+        }
+        finish();
+    }
+
+    private void reset(CsvRecordListener listener){
+        this.listener = listener;
+        this.values = new ArrayList<>(lastWidth);
+        this.columns = listener.columns();
+        this.field.setLength(0);
+        this.state = FIELD_START;
+        this.quoted = false;
+        this.afterCarriageReturn = false;
+        this.started = false;
+        this.rowNum = 0;
+        this.decoder.reset();
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) throws IOException {
+        while (true){
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if(result.isError()){
+                result.throwException();
+            }
+            parse();
+            if(result.isUnderflow()){
+                break;
+            }
+        }
+        if(endOfInput){
+            while (decoder.flush(chars).isOverflow()){
+                parse();
+            }
+            parse();
+        }
+    }
+
+    /**
+     * 解析字符缓冲区中的全部字符
+     */
+    private void parse(){
+        chars.flip();
+        char[] array = chars.array();
+        int end = chars.arrayOffset() + chars.limit();
+        int i = chars.arrayOffset() + chars.position();
+        if(!started && i < end){
+            started = true;
+            if(BOM == array[i]){
+                i ++;
+            }
+        }
+        for (; i < end; i++) {
+            char c = array[i];
+            if(afterCarriageReturn){
+                afterCarriageReturn = false;
+                if('\n' == c){
+                    continue;
+                }
+            }
+            switch (state){
+                case QUOTED:
+                    if(QUOTE == c){
+                        state = QUOTE_IN_QUOTED;
+                    }else{
+                        field.append(c);
+                    }
+                    break;
+                case QUOTE_IN_QUOTED:
+                    if(QUOTE == c){
+                        //转义的引号
+                        field.append(c);
+                        state = QUOTED;
+                        break;
+                    }
+                    //引号闭合后按非引号字段继续处理
+                    state = UNQUOTED;
+                    unquoted(c);
+                    break;
+                case FIELD_START:
+                    if(QUOTE == c){
+                        state = QUOTED;
+                        quoted = true;
+                        break;
+                    }
+                    state = UNQUOTED;
+                    unquoted(c);
+                    break;
+                default:
+                    unquoted(c);
+                    break;
+            }
+        }
+        chars.clear();
+    }
+
+    private void unquoted(char c){
+        if(delimiter == c){
+            endField();
+        }else if('\n' == c){
+            endRecord();
+        }else if('\r' == c){
+            afterCarriageReturn = true;
+            endRecord();
+        }else{
+            field.append(c);
+        }
+    }
+
+    private void endField(){
+        values.add(null == columns || columns.get(values.size()) ? field.toString() : "");
+        field.setLength(0);
+        state = FIELD_START;
+    }
+
+    private void endRecord(){
+        //空行只有一个未加引号的空字段
+        boolean empty = values.isEmpty() && 0 == field.length() && !quoted;
+        endField();
+        if(!empty){
+            lastWidth = Math.max(lastWidth, values.size());
+            listener.record(rowNum, values);
+        }
+        rowNum ++;
+        quoted = false;
+        values = new ArrayList<>(lastWidth);
+        columns = listener.columns();
+    }
+
+    private void finish(){
+        if(QUOTED == state){
+            throw new IllegalArgumentException("第" + (rowNum + 1) + "条记录的引号未闭合");
+        }
+        if(FIELD_START != state || !values.isEmpty()){
+            endRecord();
+        }
+        listener = null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.lisdocument.msio.unit.csv;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * csv记录的监听器，每解析出一条记录调用一次
+ * @author Libin
+ * @version 1.0.2
+ */
+@FunctionalInterface
+public interface CsvRecordListener {
+
+    /**
+     * 读取到一条记录，空行不推送
+     * @param rowNum 记录号，从0开始，引号内的换行不计入
+     * @param values 记录的字段，调用之后不再被读取器使用
+     */
+    void record(int rowNum, List<String> values);
+
+    /**
+     * 需要读取的字段，读取器在每条记录开始时获取，未包含的字段不生成字符串，在记录中为""
+     * @return 需要读取的字段下标，为null时读取全部字段
+     */
+    default BitSet columns(){
+        return null;
+    }
+}
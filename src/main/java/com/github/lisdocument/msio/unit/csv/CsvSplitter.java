@@ -0,0 +1,212 @@
+package com.github.lisdocument.msio.unit.csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Created with IntelliJ IDEA.
+ * csv文件的切分，将文件按字节区间切成若干块并对齐到记录边界，供多个线程并行解析
+ * 对齐依据引号的奇偶性：记录之外的引号总是成对出现，换行符之前的引号数为偶数时该换行为记录的结尾，
+ * 每块先并行统计自身的引号数以及两种奇偶性下的第一个换行位置和换行数，再按顺序累加得到各块开头的奇偶性，
+ * 从而确定真正的边界和每块第一条记录的行号，整个过程只需并行扫描一遍文件
+ * 要求引号只出现在字段的两端（符合RFC 4180），只以\r作为换行的文件找不到边界，会退化为一块
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class CsvSplitter {
+
+    private static final byte QUOTE = '"';
+
+    private static final byte LINE_FEED = '\n';
+
+    private CsvSplitter() {
+    }
+
+    /**
+     * 编码是否能按字节查找引号和换行，即ASCII字符编码为单字节且不会出现在多字节字符中，
+     * UTF-8、GBK、GB18030、ISO-8859系列均满足，UTF-16/UTF-32不满足
+     * @param charset 编码
+     * @return 是否支持切分
+     */
+    public static boolean isSplittable(Charset charset){
+        if(!charset.canEncode()){
+            return false;
+        }
+        return Arrays.equals(new byte[]{QUOTE, LINE_FEED, 'a'}, "\"\na".getBytes(charset));
+    }
+
+    /**
+     * 从指定位置开始顺序查找第一条记录的结尾
+     * @param channel 文件通道
+     * @param from 起始位置，必须位于记录边界上
+     * @return 记录结尾换行符之后的位置，找不到时返回文件大小
+     * @throws IOException 读取失败
+     */
+    public static long nextRecordEnd(FileChannel channel, long from) throws IOException {
+        long size = channel.size();
+        boolean quoted = false;
+        long position = from;
+        while (position < size){
+            int length = (int) Math.min(1 << 20, size - position);
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = 0; i < length; i++) {
+                byte b = bytes.get(i);
+                if(QUOTE == b){
+                    quoted = !quoted;
+                }else if(LINE_FEED == b && !quoted){
+                    return position + i + 1;
+                }
+            }
+            position += length;
+        }
+        return size;
+    }
+
+    /**
+     * 将[from, 文件结尾)切分为对齐到记录边界的块
+     * @param channel 文件通道，不会被关闭
+     * @param from 起始位置，必须位于记录边界上
+     * @param blockSize 切分的块大小，实际的块从每个区间内第一条记录的结尾开始
+     * @param firstRowNum 起始位置的行号
+     * @param executor 扫描使用的线程池
+     * @return 按顺序排列的块，不会为空
+     * @throws IOException 读取失败
+     */
+    public static List<Chunk> split(FileChannel channel, long from, long blockSize, int firstRowNum, Executor executor) throws IOException {
+        long size = channel.size();
+        int count = (int) Math.max(1, (size - from + blockSize - 1) / blockSize);
+        List<CompletableFuture<Block>> scans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = from + i * blockSize;
+            long end = Math.min(size, start + blockSize);
+            scans.add(CompletableFuture.supplyAsync(() -> scan(channel, start, end), executor));
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        long chunkStart = from;
+        int chunkRowNum = firstRowNum;
+        int rowNum = firstRowNum;
+        boolean quoted = false;
+        for (int i = 0; i < count; i++) {
+            Block block;
+            try {
+                block = scans.get(i).join();
+            }catch (CompletionException e){
+                if(e.getCause() instanceof UncheckedIOException){
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e;
+            }
+            long boundary = quoted ? block.firstOdd : block.firstEven;
+            if(i > 0 && boundary >= 0){
+                chunks.add(new Chunk(chunkStart, boundary + 1, chunkRowNum));
+                chunkStart = boundary + 1;
+                chunkRowNum = rowNum + 1;
+            }
+            rowNum += quoted ? block.oddLines : block.evenLines;
+            quoted ^= block.oddQuotes;
+        }
+        chunks.add(new Chunk(chunkStart, size, chunkRowNum));
+        return chunks;
+    }
+
+    /**
+     * 扫描一块，分别统计块开头在引号外和引号内两种情况下的换行
+     */
+    private static Block scan(FileChannel channel, long start, long end){
+        MappedByteBuffer bytes;
+        try {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Block block = new Block();
+        //相对于块开头的引号奇偶性
+        boolean odd = false;
+        int length = (int) (end - start);
+        for (int i = 0; i < length; i++) {
+            byte b = bytes.get(i);
+            if(QUOTE == b){
+                odd = !odd;
+            }else if(LINE_FEED == b){
+                if(odd){
+                    if(block.firstOdd < 0){
+                        block.firstOdd = start + i;
+                    }
+                    block.oddLines ++;
+                }else{
+                    if(block.firstEven < 0){
+                        block.firstEven = start + i;
+                    }
+                    block.evenLines ++;
+                }
+            }
+        }
+        block.oddQuotes = odd;
+        return block;
+    }
+
+    /**
+     * 对齐后的块
+     */
+    public static final class Chunk {
+
+        private final long start;
+
+        private final long end;
+
+        private final int firstRowNum;
+
+        private Chunk(long start, long end, int firstRowNum) {
+            this.start = start;
+            this.end = end;
+            this.firstRowNum = firstRowNum;
+        }
+
+        /**
+         * @return 起始位置（含）
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return 结束位置（不含）
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return 块内第一行在文件中的行号，行号包括空行
+         */
+        public int getFirstRowNum() {
+            return firstRowNum;
+        }
+    }
+
+    /**
+     * 一块的扫描结果，位置为-1表示不存在，
+     * even前缀的字段对应块开头位于引号外，odd前缀的字段对应块开头位于引号内（此时块内奇数个引号之后才在引号外）
+     */
+    private static final class Block {
+
+        private long firstEven = -1;
+
+        private long firstOdd = -1;
+
+        private int evenLines;
+
+        private int oddLines;
+
+        private boolean oddQuotes;
+    }
+}
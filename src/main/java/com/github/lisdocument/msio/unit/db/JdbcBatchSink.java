@@ -0,0 +1,376 @@
+package com.github.lisdocument.msio.unit.db;
+
+import com.github.lisdocument.msio.anno.MsOperator;
+import com.github.lisdocument.msio.config.AbstractMsConfigure;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.unit.func.RowHandler;
+import com.github.lisdocument.msio.utils.SpringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 导入数据直接写入数据库的逐行处理程序，配合ExcelFactory.readStream使用，导入过程中不在内存中积累结果，
+ * 插入语句按映射生成，表名取MsOperator.tableName，Map映射（json配置）等没有MsOperator的映射需要显式指定表名，列名为映射的英文字段名，
+ * 同一个PreparedStatement按batchSize批量执行，每commitSize行提交一次事务（在批的边界上提交），
+ * 使用完毕后必须调用close提交剩余的数据并释放连接，写入出错时回滚当前事务并抛出异常中断导入，之前已提交的事务不受影响
+ * <pre>
+ * try (JdbcBatchSink&lt;User&gt; sink = JdbcBatchSink.of("user")) {
+ *     ExcelFactory.readStream("user", file, 0, sink);
+ * }
+ * </pre>
+ * @author Libin
+ * @version 1.0.2
+ */
+public class JdbcBatchSink<T> implements RowHandler<T>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcBatchSink.class);
+
+    private final DataSource dataSource;
+
+    private final String id;
+
+    /**
+     * 映射的类型，Map映射时为null，行数据为Map
+     */
+    private final Class<?> clazz;
+
+    /**
+     * 写入的字段，与插入语句中的列一一对应
+     */
+    private final String[] fields;
+
+    /**
+     * Pojo模式下字段的get方法
+     */
+    private final Method[] getters;
+
+    private String tableName;
+
+    private int batchSize = 500;
+
+    private int commitSize = 5000;
+
+    private Connection connection;
+
+    private PreparedStatement statement;
+
+    private boolean autoCommit;
+
+    private int pending;
+
+    private int uncommitted;
+
+    private long written;
+
+    private long committed;
+
+    private long skipped;
+
+    private boolean closed;
+
+    /**
+     * 使用AbstractMsConfigure.configDataSource()中配置的数据源
+     * @param id 映射id
+     * @param <T> 行数据类型
+     * @return 新的实例
+     */
+    public static <T> JdbcBatchSink<T> of(String id){
+        DataSource dataSource = SpringUtils.getBean(AbstractMsConfigure.class).configDataSource();
+        if(null == dataSource){
+            throw new IllegalStateException("未配置数据源，请在AbstractMsConfigure.configDataSource中提供");
+        }
+        return new JdbcBatchSink<>(dataSource, id);
+    }
+
+    /**
+     * 使用AbstractMsConfigure.configDataSource()中配置的数据源写入指定的表
+     * @param id 映射id
+     * @param tableName 表名
+     * @param <T> 行数据类型
+     * @return 新的实例
+     */
+    public static <T> JdbcBatchSink<T> of(String id, String tableName){
+        JdbcBatchSink<T> sink = of(id);
+        return sink.setTableName(tableName);
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @param id 映射id，表名取其MsOperator.tableName，未配置表名或没有MsOperator（Map映射）时需调用setTableName，否则写入第一行时抛出异常
+     */
+    public JdbcBatchSink(DataSource dataSource, String id) {
+        this(dataSource, id, SpringUtils.getBean(MsIoContainer.class));
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @param id 映射id
+     * @param tableName 表名
+     */
+    public JdbcBatchSink(DataSource dataSource, String id, String tableName) {
+        this(dataSource, id);
+        setTableName(tableName);
+    }
+
+    JdbcBatchSink(DataSource dataSource, String id, MsIoContainer msIoContainer) {
+        LinkedHashMap<String, MsIoContainer.Information> mapping = msIoContainer.get(id);
+        if(null == mapping || mapping.isEmpty()){
+            throw new IllegalArgumentException("映射" + id + "不存在");
+        }
+        this.dataSource = dataSource;
+        this.id = id;
+        Class<?> mappedClass = msIoContainer.getClazz(id);
+        //未注册类的映射（json配置）getClazz返回Map
+        this.clazz = null == mappedClass || Map.class.isAssignableFrom(mappedClass) ? null : mappedClass;
+        List<String> names = new ArrayList<>(mapping.size());
+        List<Method> methods = new ArrayList<>(mapping.size());
+        mapping.forEach((field, information) -> {
+            //复杂映射的子对象不写入
+            if(null != information.getChildren()){
+                return;
+            }
+            if(null != clazz){
+                PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(clazz, field);
+                if(null == descriptor || null == descriptor.getReadMethod()){
+                    throw new IllegalArgumentException(clazz.getName() + "中找不到字段" + field + "的get方法");
+                }
+                Method getter = descriptor.getReadMethod();
+                getter.setAccessible(true);
+                methods.add(getter);
+            }
+            names.add(field);
+        });
+        this.fields = names.toArray(new String[0]);
+        this.getters = null == clazz ? null : methods.toArray(new Method[0]);
+        MsOperator operator = null == clazz ? null : clazz.getAnnotation(MsOperator.class);
+        this.tableName = null == operator || StringUtils.isEmpty(operator.tableName()) ? null : operator.tableName();
+    }
+
+    /**
+     * @param tableName 表名，覆盖MsOperator.tableName
+     * @return 当前对象
+     */
+    public JdbcBatchSink<T> setTableName(String tableName) {
+        if(StringUtils.isEmpty(tableName)){
+            throw new IllegalArgumentException("tableName不能为空");
+        }
+        this.tableName = tableName;
+        return this;
+    }
+
+    /**
+     * @param batchSize 每次executeBatch的行数，默认500
+     * @return 当前对象
+     */
+    public JdbcBatchSink<T> setBatchSize(int batchSize) {
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param commitSize 每个事务的行数，默认5000，在达到该行数后的第一个批边界提交
+     * @return 当前对象
+     */
+    public JdbcBatchSink<T> setCommitSize(int commitSize) {
+        if(commitSize <= 0){
+            throw new IllegalArgumentException("commitSize必须大于0");
+        }
+        this.commitSize = commitSize;
+        return this;
+    }
+
+    /**
+     * @return 插入语句
+     */
+    public String getInsertSql(){
+        if(StringUtils.isEmpty(tableName)){
+            throw new IllegalStateException("映射" + id + "未配置表名，" + (null == clazz
+                    ? "Map映射没有MsOperator，请调用setTableName或使用带表名的构造方法" : "请设置MsOperator.tableName或调用setTableName"));
+        }
+        StringBuilder sql = new StringBuilder("insert into ").append(tableName).append('(');
+        StringBuilder values = new StringBuilder(") values(");
+        for (int i = 0; i < fields.length; i++) {
+            if(i > 0){
+                sql.append(',');
+                values.append(',');
+            }
+            sql.append(fields[i]);
+            values.append('?');
+        }
+        return sql.append(values).append(')').toString();
+    }
+
+    @Override
+    public void handle(int sheetIndex, int rowNum, T row) {
+        if(closed){
+            throw new IllegalStateException("JdbcBatchSink已关闭");
+        }
+        //自动匹配时其他映射的页跳过
+        if(null == row || (null == clazz ? !(row instanceof Map) : !clazz.isInstance(row))){
+            skipped ++;
+            return;
+        }
+        try {
+            if(null == statement){
+                open();
+            }
+            for (int i = 0; i < fields.length; i++) {
+                statement.setObject(i + 1, value(row, i));
+            }
+            statement.addBatch();
+            if(++ pending >= batchSize){
+                executeBatch();
+                if(uncommitted >= commitSize){
+                    commit();
+                }
+            }
+        }catch (SQLException e){
+            rollback();
+            throw new IllegalStateException("第" + (sheetIndex + 1) + "页第" + (rowNum + 1) + "行写入失败，当前事务已回滚", e);
+        }
+    }
+
+    /**
+     * 执行剩余的批并提交，释放连接
+     */
+    @Override
+    public void close() {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            if(null != statement){
+                executeBatch();
+                commit();
+            }
+        }catch (SQLException e){
+            rollback();
+            throw new IllegalStateException("写入剩余数据失败，当前事务已回滚", e);
+        }finally {
+            release();
+            log.info("映射" + id + "写入" + tableName + "完成，写入" + written + "行，提交" + committed + "行，跳过" + skipped + "行");
+        }
+    }
+
+    /**
+     * @return 已执行的行数
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return 已提交的行数
+     */
+    public long getCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return 不属于当前映射而跳过的行数
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    private void open() throws SQLException {
+        String sql = getInsertSql();
+        connection = dataSource.getConnection();
+        autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        statement = connection.prepareStatement(sql);
+    }
+
+    private void executeBatch() throws SQLException {
+        if(0 == pending){
+            return;
+        }
+        statement.executeBatch();
+        written += pending;
+        uncommitted += pending;
+        pending = 0;
+    }
+
+    private void commit() throws SQLException {
+        connection.commit();
+        committed += uncommitted;
+        uncommitted = 0;
+    }
+
+    private void rollback(){
+        if(null == connection){
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.error("回滚失败", e);
+        }
+        written -= uncommitted;
+        uncommitted = 0;
+        pending = 0;
+    }
+
+    private void release(){
+        if(null != statement){
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.error("关闭PreparedStatement失败", e);
+            }
+            statement = null;
+        }
+        if(null != connection){
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                log.error("恢复连接的自动提交失败", e);
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.error("关闭连接失败", e);
+            }
+            connection = null;
+        }
+    }
+
+    private Object value(T row, int index){
+        Object value;
+        if(null == getters){
+            value = ((Map<?, ?>) row).get(fields[index]);
+        }else{
+            try {
+                value = getters[index].invoke(row);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException(clazz.getName() + "." + getters[index].getName() + "调用失败", e);
+            }
+        }
+        //java.util.Date并非所有驱动都支持，统一转换为Timestamp
+        if(null != value && value.getClass() == Date.class){
+            return new Timestamp(((Date) value).getTime());
+        }
+        return value;
+    }
+}
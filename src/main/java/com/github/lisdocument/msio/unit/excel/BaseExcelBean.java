@@ -9,6 +9,8 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -40,13 +42,33 @@ public abstract class BaseExcelBean implements IExcelBean {
         return dataCache.getOrDefault(pageNo,new ArrayList());
     }
 
+    @Override
+    public void release(Integer pageNo) {
+        dataCache.remove(pageNo);
+    }
+
     /**
      * 参数构造
      * @param file 文件实例
      * @param isTuring 是否翻页
      */
     BaseExcelBean(File file,boolean isTuring){
-        this.workbook = MsUtils.transWorkbook(file);
+        this.workbook = MsUtils.transWorkbookReadOnly(file);
+        this.isTuring = isTuring;
+        this.dataCache = Maps.newHashMapWithExpectedSize(64);
+    }
+
+    /**
+     * 参数构造
+     * @param in 输入流，不会被关闭
+     * @param isTuring 是否翻页
+     */
+    BaseExcelBean(InputStream in,boolean isTuring){
+        try {
+            this.workbook = MsUtils.transWorkbook(in);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入",e);
+        }
         this.isTuring = isTuring;
         this.dataCache = Maps.newHashMapWithExpectedSize(64);
     }
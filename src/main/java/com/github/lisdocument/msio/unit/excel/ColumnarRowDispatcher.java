@@ -0,0 +1,89 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 列式导入的逐行分发，标题行的识别、映射匹配、去重、投影及行范围与流式导入一致，
+ * 数据行不转换为对象，直接按绑定计划追加到当前页的ExcelColumns中
+ * @author Libin
+ * @version 1.0.2
+ */
+final class ColumnarRowDispatcher extends SheetRowDispatcher {
+
+    /**
+     * 每页的列式结果，键为页码
+     */
+    private final Map<Integer, ExcelColumns> result = new LinkedHashMap<>();
+
+    /**
+     * 当前页的绑定器及列式结果
+     */
+    private ExcelRowBinder binder;
+
+    private ExcelColumns current;
+
+    ColumnarRowDispatcher(MsIoContainer msIoContainer, IFormatConversion formatConversion, ExcelImportOption option) {
+        super(msIoContainer, formatConversion, option.getId(), option.getPageNo(),
+                null == option.getIds() || option.getIds().isEmpty() ? null : option.getIds(), option.isChangeClass(),
+                (sheetIndex, rowNum, bean) -> {});
+    }
+
+    /**
+     * @return 每页的列式结果，键为页码，只有标题行的页行数为0，未匹配到标题的页及转换失败的页不包含在内
+     */
+    Map<Integer, ExcelColumns> getResult() {
+        return result;
+    }
+
+    @Override
+    void accept(int sheetIndex, int rowNum, ExcelRowBinder binder, List<String> values) {
+        try {
+            columns(sheetIndex, binder).append(values);
+        }catch (RuntimeException e){
+            fail(sheetIndex, e);
+        }
+    }
+
+    /**
+     * 转换失败的页已追加的部分行没有意义，从结果中移除，避免与完整的页混淆
+     * @param sheetIndex 页码
+     * @param e 异常
+     */
+    @Override
+    synchronized void fail(int sheetIndex, Exception e) {
+        super.fail(sheetIndex, e);
+        result.remove(sheetIndex);
+    }
+
+    @Override
+    public boolean startSheet(int sheetIndex, String sheetName) {
+        binder = null;
+        current = null;
+        return super.startSheet(sheetIndex, sheetName);
+    }
+
+    @Override
+    void report(ExcelRowBinder binder) {
+        if(isFailed(getSheetSize() - 1)){
+            return;
+        }
+        ExcelColumns columns = columns(getSheetSize() - 1, binder);
+        columns.seal();
+        columns.report();
+    }
+
+    private ExcelColumns columns(int sheetIndex, ExcelRowBinder binder){
+        if(this.binder != binder){
+            this.binder = binder;
+            current = new ExcelColumns(sheetIndex, binder);
+            result.put(sheetIndex, current);
+        }
+        return current;
+    }
+}
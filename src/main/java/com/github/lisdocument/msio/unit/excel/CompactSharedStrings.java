@@ -0,0 +1,288 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 紧凑存储的共享字符串表，字符串以UTF-8编码依次存放在字节块中，只保留每个字符串的位置及长度（每个12字节），
+ * 读取页时按序号即时解码，不会在读取第一行之前为每个字符串创建String对象
+ * 字节块可以是堆内的byte[]（ARENA），也可以是内存映射的临时文件（DISK），后者几乎不占用堆内存，
+ * 最近解码的字符串保存在按序号直接映射的小缓存中，重复出现的字符串（如分类列）不会反复解码
+ * 写入全部字符串后调用seal，之后只读；不是线程安全的，使用完毕后需要close删除临时文件
+ * @author Libin
+ * @version 1.0.2
+ */
+final class CompactSharedStrings extends AbstractList<String> implements RandomAccess, Closeable {
+
+    /**
+     * 堆内字节块的大小
+     */
+    private static final int ARENA_CHUNK = 1 << 20;
+
+    /**
+     * 临时文件的映射窗口大小，字符串不会跨越窗口
+     */
+    private static final int FILE_WINDOW = 1 << 30;
+
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * 是否存放在临时文件中
+     */
+    private final boolean onDisk;
+
+    private final int chunkSize;
+
+    /**
+     * 每个字符串的位置，高32位为块号，低32位为块内偏移
+     */
+    private long[] positions;
+
+    private int[] lengths;
+
+    private int size;
+
+    /**
+     * 堆内的字节块，当前块之后的元素为null
+     */
+    private byte[][] chunks = new byte[16][];
+
+    private File file;
+
+    private OutputStream out;
+
+    private ByteBuffer[] windows;
+
+    private int chunk;
+
+    private int offset;
+
+    /**
+     * 编码及读取映射时使用的缓冲
+     */
+    private byte[] scratch = new byte[256];
+
+    private final String[] cache = new String[CACHE_SIZE];
+
+    private final int[] cacheKeys = new int[CACHE_SIZE];
+
+    /**
+     * @param onDisk 是否存放在临时文件中
+     * @param expectedSize 预计的字符串数
+     * @throws UncheckedIOException 临时文件创建失败
+     */
+    CompactSharedStrings(boolean onDisk, int expectedSize) {
+        this.onDisk = onDisk;
+        this.chunkSize = onDisk ? FILE_WINDOW : ARENA_CHUNK;
+        int capacity = Math.max(16, expectedSize);
+        this.positions = new long[capacity];
+        this.lengths = new int[capacity];
+        Arrays.fill(cacheKeys, -1);
+        if(onDisk){
+            try {
+                file = File.createTempFile("msio", ".sst");
+                out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+            }catch (IOException e){
+                if(null != file && !file.delete()){
+                    file.deleteOnExit();
+                }
+                throw new UncheckedIOException("共享字符串临时文件创建失败", e);
+            }
+        }else{
+            chunks[0] = new byte[ARENA_CHUNK];
+        }
+    }
+
+    /**
+     * 写入一个字符串
+     * @param value 字符串
+     * @throws UncheckedIOException 写入临时文件失败
+     */
+    void append(CharSequence value){
+        int length = encode(value);
+        if(offset + length > chunkSize){
+            nextChunk(length);
+        }
+        if(size == positions.length){
+            positions = Arrays.copyOf(positions, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        positions[size] = ((long) chunk << 32) | offset;
+        lengths[size ++] = length;
+        if(onDisk){
+            try {
+                out.write(scratch, 0, length);
+            }catch (IOException e){
+                throw new UncheckedIOException("共享字符串写入临时文件失败", e);
+            }
+        }else{
+            System.arraycopy(scratch, 0, chunks[chunk], offset, length);
+        }
+        offset += length;
+    }
+
+    /**
+     * 写入完成，临时文件在此时映射
+     * @throws UncheckedIOException 映射临时文件失败
+     */
+    void seal(){
+        if(!onDisk || null != windows){
+            return;
+        }
+        try {
+            out.close();
+            out = null;
+            windows = new ByteBuffer[chunk + 1];
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                 FileChannel channel = randomAccessFile.getChannel()){
+                for (int i = 0; i <= chunk; i++) {
+                    long start = (long) i * FILE_WINDOW;
+                    windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(FILE_WINDOW, channel.size() - start));
+                }
+            }
+        }catch (IOException e){
+            throw new UncheckedIOException("共享字符串临时文件映射失败", e);
+        }
+    }
+
+    @Override
+    public String get(int index) {
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("共享字符串序号" + index + "超出范围，共" + size + "个");
+        }
+        int slot = index & (CACHE_SIZE - 1);
+        if(cacheKeys[slot] == index){
+            return cache[slot];
+        }
+        long position = positions[index];
+        int block = (int) (position >>> 32);
+        int start = (int) position;
+        String value;
+        if(onDisk){
+            ByteBuffer window = windows[block];
+            int length = lengths[index];
+            byte[] bytes = buffer(length);
+            for (int i = 0; i < length; i++) {
+                bytes[i] = window.get(start + i);
+            }
+            value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }else{
+            value = new String(chunks[block], start, lengths[index], StandardCharsets.UTF_8);
+        }
+        cacheKeys[slot] = index;
+        cache[slot] = value;
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 占用的堆内存字节数（估算，不含缓存中的字符串）
+     */
+    long memoryBytes(){
+        long bytes = (long) positions.length * 12;
+        if(!onDisk){
+            bytes += (long) (chunk + 1) * ARENA_CHUNK;
+        }
+        return bytes;
+    }
+
+    /**
+     * 释放字节块并删除临时文件，映射的内存在被回收后释放
+     */
+    @Override
+    public void close(){
+        chunks = null;
+        windows = null;
+        if(null != out){
+            try {
+                out.close();
+            }catch (IOException e){
+                //关闭失败时同样删除文件
+            }
+            out = null;
+        }
+        if(null != file){
+            if(!file.delete()){
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    private void nextChunk(int length){
+        if(onDisk){
+            //补齐当前窗口，字符串不跨越窗口
+            try {
+                for (int i = offset; i < chunkSize; i++) {
+                    out.write(0);
+                }
+            }catch (IOException e){
+                throw new UncheckedIOException("共享字符串写入临时文件失败", e);
+            }
+        }else{
+            if(chunk + 1 == chunks.length){
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            chunks[chunk + 1] = new byte[Math.max(ARENA_CHUNK, length)];
+        }
+        chunk ++;
+        offset = 0;
+    }
+
+    /**
+     * 以UTF-8编码写入缓冲，不合法的代理项按String.getBytes的方式替换为?
+     * @param value 字符串
+     * @return 字节数
+     */
+    private int encode(CharSequence value){
+        int length = value.length();
+        byte[] bytes = buffer(length * 3);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if(c < 0x80){
+                bytes[count ++] = (byte) c;
+            }else if(c < 0x800){
+                bytes[count ++] = (byte) (0xC0 | (c >> 6));
+                bytes[count ++] = (byte) (0x80 | (c & 0x3F));
+            }else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, value.charAt(++ i));
+                bytes[count ++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[count ++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[count ++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[count ++] = (byte) (0x80 | (codePoint & 0x3F));
+            }else if(Character.isSurrogate(c)){
+                bytes[count ++] = '?';
+            }else{
+                bytes[count ++] = (byte) (0xE0 | (c >> 12));
+                bytes[count ++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[count ++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return count;
+    }
+
+    private byte[] buffer(int length){
+        if(scratch.length < length){
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+}
@@ -1,23 +1,447 @@
 package com.github.lisdocument.msio.unit.excel;
 
-import java.util.List;
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.exception.IndexOutOfSheetSizeException;
+import com.github.lisdocument.msio.exception.UnsupportFormatException;
+import com.github.lisdocument.msio.utils.DateParser;
+import com.github.lisdocument.msio.utils.ImportAccessor;
+import com.github.lisdocument.msio.utils.MergedRegionIndex;
+import com.github.lisdocument.msio.utils.MsUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
 
 /**
  * Created with IntelliJ IDEA.
- * 复杂Excel导入
- * @author ThisLi(Bin)
- * time: 15:52
- * To change this template use File | Settings | File Templates.
+ * 复杂Excel导入，与ComplexExcelBeanReverse导出的格式对应：可选的首行大标题，之后为getDepthLevel行的多级标题，
+ * 双亲标题横向合并覆盖子项所在的列，叶子标题纵向合并至最下层，标题之下为数据，
+ * 标题按映射的Information.children逐层匹配（按名称而不依赖列的顺序），得到每个叶子列在对象树中的路径，
+ * 数据行按路径还原嵌套的Pojo或者Map，
+ * 合并单元格通过MergedRegionIndex查找，标题中每个单元格的查找为O(log n)
+ * @author Libin
+ * @version 1.0.2
  */
-public final class ComplexExcelBean implements IExcelBean {
+public final class ComplexExcelBean extends BaseExcelBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ComplexExcelBean.class);
+
+    /**
+     * 是否根据标题自动匹配映射
+     */
+    private boolean isChangeClass = true;
+
+    private List<String> idPool;
+
+    /**
+     * 已经尝试解析过的页，解析失败的页同样记录，避免重复解析
+     */
+    private final BitSet loadedPages = new BitSet();
+
+    private ComplexExcelBean(@NotNull MultipartFile file){
+        super(file,true);
+    }
+
+    private ComplexExcelBean(@NotNull File file){
+        super(file,true);
+    }
+
+    private ComplexExcelBean(@NotNull InputStream in){
+        super(in,true);
+    }
+
+    /**
+     * 单页初始化
+     * @param id 指派导入的复杂映射，为null则根据第一层标题查找
+     * @param file 文件流
+     * @param pageIndex 单页码，页码
+     */
+    ComplexExcelBean(String id, @NotNull MultipartFile file, @NotNull Integer pageIndex){
+        this(file);
+        this.isTuring = false;
+        loadSinglePage(id, pageIndex);
+    }
+
+    /**
+     * 单页初始化
+     * @param id 指派导入的复杂映射，为null则根据第一层标题查找
+     * @param file 文件
+     * @param pageIndex 单页码，页码
+     */
+    ComplexExcelBean(String id, @NotNull File file, @NotNull Integer pageIndex){
+        this(file);
+        this.isTuring = false;
+        loadSinglePage(id, pageIndex);
+    }
+
+    /**
+     * 单页初始化
+     * @param id 指派导入的复杂映射，为null则根据第一层标题查找
+     * @param in 输入流
+     * @param pageIndex 单页码，页码
+     */
+    ComplexExcelBean(String id, @NotNull InputStream in, @NotNull Integer pageIndex){
+        this(in);
+        this.isTuring = false;
+        loadSinglePage(id, pageIndex);
+    }
+
+    /**
+     * 多页指定每页的id并初始化，每页在首次获取时才解析
+     * @param idPool 每页的id池，为空时每页均自动匹配
+     * @param file 文件流
+     * @param isChangeClass id池中没有id的页是否自动匹配，为false则省略该页
+     */
+    ComplexExcelBean(List<String> idPool, @NotNull MultipartFile file, boolean isChangeClass){
+        this(file);
+        this.isChangeClass = isChangeClass;
+        this.idPool = idPool;
+    }
+
+    /**
+     * 多页指定每页的id并初始化，每页在首次获取时才解析
+     * @param idPool 每页的id池，为空时每页均自动匹配
+     * @param file 文件
+     * @param isChangeClass id池中没有id的页是否自动匹配，为false则省略该页
+     */
+    ComplexExcelBean(List<String> idPool, @NotNull File file, boolean isChangeClass){
+        this(file);
+        this.isChangeClass = isChangeClass;
+        this.idPool = idPool;
+    }
 
+    /**
+     * 多页指定每页的id并初始化，每页在首次获取时才解析
+     * @param idPool 每页的id池，为空时每页均自动匹配
+     * @param in 输入流
+     * @param isChangeClass id池中没有id的页是否自动匹配，为false则省略该页
+     */
+    ComplexExcelBean(List<String> idPool, @NotNull InputStream in, boolean isChangeClass){
+        this(in);
+        this.isChangeClass = isChangeClass;
+        this.idPool = idPool;
+    }
+
+    /**
+     * 多页模式下按需解析，首次获取时才转换该页，结果缓存至release为止
+     * @param pageNo 页码
+     * @return 该页转换后的数组
+     */
     @Override
-    public List getData(Integer pageNo) {
-        return null;
+    @SuppressWarnings("rawtypes")
+    public synchronized List getData(Integer pageNo) {
+        if(isTuring && null != pageNo && !loadedPages.get(pageNo)){
+            loadedPages.set(pageNo);
+            List<Object> content = convertPage(pageNo);
+            if(null != content){
+                dataCache.put(pageNo, content);
+            }
+        }
+        return super.getData(pageNo);
+    }
+
+    @Override
+    public synchronized void release(Integer pageNo) {
+        super.release(pageNo);
+        if(null != pageNo){
+            loadedPages.clear(pageNo);
+        }
     }
 
     @Override
     public int getDataSize() {
-        return 0;
+        return workbook.getNumberOfSheets();
+    }
+
+    private void loadSinglePage(String id, int pageIndex){
+        try {
+            dataCache.put(pageIndex, getPageContent(pageIndex, StringUtils.isEmpty(id) ? null : id));
+        } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 解析多页模式下的单页，路由规则与SimpleExcelBean一致
+     * @param pageIndex 页码
+     * @return 当前页解析的结果，省略或者解析失败的页为null
+     */
+    private List<Object> convertPage(int pageIndex){
+        if(pageIndex < 0 || pageIndex >= getDataSize()){
+            return null;
+        }
+        String id = null == idPool || pageIndex >= idPool.size() ? null : idPool.get(pageIndex);
+        if(StringUtils.isEmpty(id)){
+            if(null != idPool && !isChangeClass){
+                return null;
+            }
+            id = null;
+        }
+        try {
+            return getPageContent(pageIndex, id);
+        } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException | RuntimeException e) {
+            log.error("迭代时发生异常，异常页" + pageIndex);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 获取当前页的数据
+     * @param pageIndex 页码
+     * @param id 复杂映射id，为null时根据第一层标题查找
+     * @return 当前页解析的结果
+     * @throws IndexOutOfSheetSizeException 输入页码数错误超过范围
+     * @throws UnsupportFormatException 找不到匹配的复杂映射
+     * @throws NoSuchMethodException 找不到字段的set方法或者转换方法
+     */
+    private List<Object> getPageContent(int pageIndex, String id) throws IndexOutOfSheetSizeException, UnsupportFormatException, NoSuchMethodException{
+        if(getDataSize() <= pageIndex){
+            throw new IndexOutOfSheetSizeException("页码最大值为" + getDataSize() + "的数据，强行获取" + pageIndex + "页数据");
+        }
+        Sheet sheet = workbook.getSheetAt(pageIndex);
+        MergedRegionIndex regions = MergedRegionIndex.of(sheet);
+        //首行大标题判断：左上角为横向合并的区域且不是映射的第一层标题
+        int headRow = 0;
+        CellRangeAddress corner = regions.get(0, 0);
+        String key = id;
+        if(null == key){
+            key = msIoContainer.matchComplex(anchorTexts(sheet, 0, regions));
+            if(null == key && null != corner && corner.getLastColumn() > 0){
+                headRow = corner.getLastRow() + 1;
+                key = msIoContainer.matchComplex(anchorTexts(sheet, headRow, regions));
+            }
+            if(null == key){
+                throw new UnsupportFormatException("第" + pageIndex + "页的标题找不到匹配的复杂映射，请指定映射id");
+            }
+        }else if(null != corner && corner.getLastColumn() > 0
+                && !MsUtils.mapInversion(msIoContainer.get(key)).containsKey(regions.getValue(0, 0))){
+            headRow = corner.getLastRow() + 1;
+        }
+        LinkedHashMap<String, MsIoContainer.Information> mapping = msIoContainer.get(key);
+        if(null == mapping || mapping.isEmpty()){
+            throw new UnsupportFormatException("未找到id为" + key + "的映射");
+        }
+        int depthLevel = msIoContainer.getDepthLevel(key);
+        Class<?> clazz = msIoContainer.getClazz(key);
+        Node root = new Node(null == clazz || Map.class == clazz ? null : msIoContainer.getAccessor(clazz), formatConversion);
+        //每一列都有一个叶子标题，其左上角位于标题区域的某一行中
+        int lastColumn = -1;
+        for (int i = headRow; i < headRow + depthLevel; i++) {
+            lastColumn = Math.max(lastColumn, lastCellNum(sheet.getRow(i)) - 1);
+        }
+        plan(regions, mapping, root, headRow, headRow + depthLevel - 1, 0, lastColumn);
+        List<Object> list = new ArrayList<>();
+        for (int i = headRow + depthLevel; i <= sheet.getLastRowNum(); i++) {
+            Row row = sheet.getRow(i);
+            if(null == row){
+                continue;
+            }
+            list.add(root.bind(row));
+        }
+        root.report("");
+        return list;
+    }
+
+    /**
+     * 按层匹配标题，生成对象树的绑定计划
+     * @param regions 页的合并单元格索引
+     * @param mapping 当前层的映射
+     * @param node 当前层对应的对象
+     * @param rowNum 当前层标题所在行
+     * @param lastRow 标题的最下层
+     * @param firstColumn 当前层覆盖的第一列
+     * @param lastColumn 当前层覆盖的最后一列
+     * @throws NoSuchMethodException 找不到字段的set方法或者转换方法
+     */
+    private void plan(MergedRegionIndex regions, LinkedHashMap<String, MsIoContainer.Information> mapping, Node node,
+                      int rowNum, int lastRow, int firstColumn, int lastColumn) throws NoSuchMethodException{
+        LinkedHashMap<String, String> inversion = MsUtils.mapInversion(mapping);
+        int column = firstColumn;
+        while (column <= lastColumn){
+            CellRangeAddress region = regions.get(rowNum, column);
+            int regionLastRow = null == region ? rowNum : region.getLastRow();
+            int regionLastColumn = null == region ? column : Math.min(region.getLastColumn(), lastColumn);
+            String egName = inversion.get(regions.getValue(rowNum, column));
+            MsIoContainer.Information information = null == egName ? null : mapping.get(egName);
+            if(null != information){
+                if(null != information.getChildren() && !information.getChildren().isEmpty()){
+                    if(regionLastRow < lastRow){
+                        Node child = node.child(egName, information, msIoContainer);
+                        plan(regions, information.getChildren(), child, regionLastRow + 1, lastRow, column, regionLastColumn);
+                    }
+                }else{
+                    node.leaf(egName, information, column);
+                }
+            }
+            column = regionLastColumn + 1;
+        }
+    }
+
+    /**
+     * 一行中每个单元格的值，被合并的非左上角单元格为null，用于匹配映射
+     */
+    private static List<String> anchorTexts(Sheet sheet, int rowNum, MergedRegionIndex regions){
+        Row row = sheet.getRow(rowNum);
+        int size = lastCellNum(row);
+        List<String> texts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String value = regions.isHidden(rowNum, i) ? null : MsUtils.getStringValueFromCell(row.getCell(i));
+            texts.add(StringUtils.isEmpty(value) ? null : value);
+        }
+        return texts;
+    }
+
+    private static int lastCellNum(Row row){
+        return null == row ? 0 : Math.max(0, row.getLastCellNum());
+    }
+
+    /**
+     * 对象树中的一个对象，Pojo或者Map，包括直接赋值的叶子列和嵌套的子对象
+     */
+    private static final class Node {
+
+        private final ImportAccessor accessor;
+
+        private final List<String> keys = new ArrayList<>();
+
+        /**
+         * 叶子列为列号，子对象为-1
+         */
+        private final List<Integer> columns = new ArrayList<>();
+
+        private final List<Integer> setters = new ArrayList<>();
+
+        private final List<Method> converters = new ArrayList<>();
+
+        /**
+         * 使用默认转换方法的日期列的解析器，其余列为null
+         */
+        private final List<DateParser> dateParsers = new ArrayList<>();
+
+        private final List<Class<?>> fieldTypes = new ArrayList<>();
+
+        private final List<Node> children = new ArrayList<>();
+
+        private final IFormatConversion formatConversion;
+
+        private Node(ImportAccessor accessor, IFormatConversion formatConversion) {
+            this.accessor = accessor;
+            this.formatConversion = formatConversion;
+        }
+
+        /**
+         * 添加嵌套的子对象，Pojo中子对象的类型取映射中记录的字段类型，没有记录时取set方法的参数类型，Map或接口类型使用Map
+         */
+        private Node child(String egName, MsIoContainer.Information information, MsIoContainer msIoContainer) throws NoSuchMethodException{
+            int setter = -1;
+            ImportAccessor childAccessor = null;
+            if(null != accessor){
+                setter = accessor.indexOf(egName, information.getFieldType());
+                if(-1 == setter){
+                    throw new NoSuchMethodException(accessor.getClazz().getName() + "中找不到字段" + egName + "的set方法");
+                }
+                Class<?> type = null == information.getFieldType() ? accessor.getType(setter) : information.getFieldType();
+                if(!Map.class.isAssignableFrom(type) && !type.isInterface()){
+                    childAccessor = msIoContainer.getAccessor(type);
+                }
+            }
+            Node child = new Node(childAccessor, formatConversion);
+            add(egName, -1, setter, null, null, child);
+            return child;
+        }
+
+        /**
+         * 添加直接赋值的叶子列，Pojo中非String字段使用IFormatConversion中对应的转换方法
+         */
+        private void leaf(String egName, MsIoContainer.Information information, int column) throws NoSuchMethodException{
+            if(null == accessor){
+                add(egName, column, -1, null, null, null);
+                return;
+            }
+            int setter = accessor.indexOf(egName, information.getFieldType());
+            if(-1 == setter){
+                throw new NoSuchMethodException(accessor.getClazz().getName() + "中找不到字段" + egName + "的set方法");
+            }
+            Class<?> fieldType = accessor.getType(setter);
+            add(egName, column, setter, String.class == fieldType ? null : ExcelRowBinder.converter(formatConversion, fieldType), fieldType, null);
+        }
+
+        private void add(String key, int column, int setter, Method converter, Class<?> fieldType, Node child){
+            keys.add(key);
+            columns.add(column);
+            setters.add(setter);
+            converters.add(converter);
+            fieldTypes.add(fieldType);
+            dateParsers.add(null == fieldType ? null : ExcelRowBinder.dateParser(fieldType, converter));
+            children.add(child);
+        }
+
+        /**
+         * 输出日期列解析失败的汇总，页解析完成后调用
+         * @param path 当前对象的字段路径，根对象为空字符串
+         */
+        private void report(String path){
+            for (int i = 0; i < keys.size(); i++) {
+                Node child = children.get(i);
+                if(null != child){
+                    child.report(path + keys.get(i) + ".");
+                    continue;
+                }
+                DateParser dateParser = dateParsers.get(i);
+                if(null != dateParser && dateParser.getFailed() > 0){
+                    log.warn("字段" + path + keys.get(i) + "列共有" + dateParser.getFailed() + "条数据无法识别为日期，例如："
+                            + dateParser.getFirstFailure());
+                }
+            }
+        }
+
+        private Object bind(Row row){
+            if(null == accessor){
+                Map<String, Object> result = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+                for (int i = 0; i < keys.size(); i++) {
+                    Node child = children.get(i);
+                    result.put(keys.get(i), null == child ? MsUtils.getStringValueFromCell(row.getCell(columns.get(i))) : child.bind(row));
+                }
+                return result;
+            }
+            Object obj = accessor.newInstance();
+            for (int i = 0; i < keys.size(); i++) {
+                Node child = children.get(i);
+                if(null != child){
+                    accessor.set(obj, setters.get(i), child.bind(row));
+                    continue;
+                }
+                String value = MsUtils.getStringValueFromCell(row.getCell(columns.get(i)));
+                Method converter = converters.get(i);
+                DateParser dateParser = dateParsers.get(i);
+                if(null != dateParser){
+                    accessor.set(obj, setters.get(i), ExcelRowBinder.parseDate(dateParser, fieldTypes.get(i), value));
+                    continue;
+                }
+                accessor.set(obj, setters.get(i), null == converter ? value : convert(converter, value));
+            }
+            return obj;
+        }
+
+        private Object convert(Method converter, String value){
+            try {
+                return converter.invoke(formatConversion, value);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
     }
 }
@@ -7,6 +7,7 @@ import com.google.common.collect.Sets;
 import com.github.lisdocument.msio.config.MsIoContainer;
 import com.github.lisdocument.msio.exception.DataUnCatchException;
 import com.github.lisdocument.msio.utils.ClassUtils;
+import com.github.lisdocument.msio.utils.MergedRegionIndex;
 import com.github.lisdocument.msio.utils.MsUtils;
 import com.github.lisdocument.msio.utils.StringRegexUtils;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -110,6 +111,8 @@ public final class ComplexExcelBeanReverse extends BaseExcelBeanReverse{
             return;
         }
         Object instance = list.get(0);
+        //标题中的合并区域较多，使用索引检查重叠
+        MergedRegionIndex regions = MergedRegionIndex.of(sheet);
         //全局错误
         DataUnCatchException error = null;
         //总行数和总列数
@@ -138,10 +141,10 @@ public final class ComplexExcelBeanReverse extends BaseExcelBeanReverse{
             LinkedHashMap<String, MsIoContainer.Information> mapping = msIoContainer.get(key);
             //编写标题
             LinkedHashMap<String, MsIoContainer.Information> titles = Maps.newLinkedHashMapWithExpectedSize(32);
-            columnSize = mapComplexTitle(mapping,depthLevel + titleNo,titleNo,0,sheet,titles);
+            columnSize = mapComplexTitle(mapping,depthLevel + titleNo,titleNo,0,sheet,regions,titles);
             //标题写入
             if(null != head) {
-                MsUtils.mergeAndCenteredCell(sheet, head, 0, 0, 0, columnSize - 1, true, true);
+                MsUtils.mergeAndCenteredCell(sheet, regions, head, 0, 0, 0, columnSize - 1, true, true);
             }
             //开始填入内容，map无层级关系，以最低级得叶子节点为主
             //行指针定义,行从0开始因此可以直接使用depthLevel
@@ -187,10 +190,10 @@ public final class ComplexExcelBeanReverse extends BaseExcelBeanReverse{
             int depthLevel = msIoContainer.getDepthLevel(clazz);
             //这个title无效，pojo类产生的title，会因为英文相同导致被刷新
             LinkedHashMap<String, MsIoContainer.Information> titles = Maps.newLinkedHashMapWithExpectedSize(16);
-            columnSize = mapComplexTitle(mapping,depthLevel + titleNo,titleNo,0,sheet,titles);
+            columnSize = mapComplexTitle(mapping,depthLevel + titleNo,titleNo,0,sheet,regions,titles);
             //标题写入
             if(null != head) {
-                MsUtils.mergeAndCenteredCell(sheet, head, 0, 0, 0, columnSize - 1, true, true);
+                MsUtils.mergeAndCenteredCell(sheet, regions, head, 0, 0, 0, columnSize - 1, true, true);
             }
             //遍历存储数据
             for (Object obj : list) {
@@ -266,10 +269,11 @@ public final class ComplexExcelBeanReverse extends BaseExcelBeanReverse{
      * @param maxLevel 当前层，用于统计当前指针层数，从0开始向下延伸，叶子层一律用最下层作为lastRowNum，双亲层一般为单层
      * @param index 当前列，作用为指针，在递归过程中能够记录
      * @param sheet 页面
+     * @param regions 页面的合并单元格索引
      * @param titles 标题提取变量，使用地址传递的特性进行处理
      * @return 数据
      */
-    private int mapComplexTitle(LinkedHashMap<String, MsIoContainer.Information> mapping, int depthLevel, int maxLevel, int index, Sheet sheet, LinkedHashMap<String, MsIoContainer.Information> titles){
+    private int mapComplexTitle(LinkedHashMap<String, MsIoContainer.Information> mapping, int depthLevel, int maxLevel, int index, Sheet sheet, MergedRegionIndex regions, LinkedHashMap<String, MsIoContainer.Information> titles){
         if(null == mapping || mapping.isEmpty()){
             return 1;
         }
@@ -277,18 +281,18 @@ public final class ComplexExcelBeanReverse extends BaseExcelBeanReverse{
         for (String key : mapping.keySet()) {
             MsIoContainer.Information information = mapping.get(key);
             //单项最低
-            int itemCount = mapComplexTitle(information.getChildren(), depthLevel, maxLevel + 1, index, sheet,titles);
+            int itemCount = mapComplexTitle(information.getChildren(), depthLevel, maxLevel + 1, index, sheet, regions, titles);
             //无子项
             if(1 == itemCount){
                 //合并叶子单元格
-                MsUtils.mergeAndCenteredCell(sheet,information.getName(),maxLevel,depthLevel-1,index,index,true,true);
+                MsUtils.mergeAndCenteredCell(sheet,regions,information.getName(),maxLevel,depthLevel-1,index,index,true,true);
                 //指针下滑计数
                 index += 1;
                 count ++;
                 titles.put(key,information);
             }else{
                 //合并双亲单元格
-                MsUtils.mergeAndCenteredCell(sheet,information.getName(),maxLevel,maxLevel,index,index + itemCount-1,true,true);
+                MsUtils.mergeAndCenteredCell(sheet,regions,information.getName(),maxLevel,maxLevel,index,index + itemCount-1,true,true);
                 index += itemCount;
                 count += itemCount;
             }
@@ -0,0 +1,658 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.utils.DateParser;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 单页导入的列式结果，每个有映射的字段一列，按映射中记录的字段类型存放在基本类型数组中，不创建Pojo及包装对象：
+ * int/short/byte及包装类型为IntColumn，long及包装类型为LongColumn，double/float及包装类型为DoubleColumn，
+ * boolean及包装类型为BooleanColumn，Date/LocalDate/LocalDateTime为LongColumn（系统时区的毫秒时间戳），
+ * 其余类型（String、BigDecimal、自定义类型）以及Map模式下的全部列为StringColumn，保存单元格的原始字符串，按字典编码
+ * 空单元格及无法转换的单元格在该列的空值位图中标记，基本类型数组中对应的位置为0
+ * 数组在读取完毕后截断为行数，可以直接遍历，遍历数组时需要结合空值位图
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class ExcelColumns {
+
+    private static final Logger log = LoggerFactory.getLogger(ExcelColumns.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int sheetIndex;
+
+    private final String id;
+
+    /**
+     * 各列，按excel中的列顺序排列
+     */
+    private final Column[] columns;
+
+    /**
+     * 每列在excel中的列号
+     */
+    private final int[] cellColumns;
+
+    private final Map<String, Column> byName;
+
+    private int rowCount;
+
+    /**
+     * 根据当前页的绑定计划创建各列
+     * @param sheetIndex 页码
+     * @param binder 当前页的绑定器
+     */
+    ExcelColumns(int sheetIndex, ExcelRowBinder binder) {
+        this.sheetIndex = sheetIndex;
+        this.id = binder.getId();
+        int size = binder.planSize();
+        this.columns = new Column[size];
+        this.cellColumns = new int[size];
+        this.byName = new LinkedHashMap<>(Math.max(16, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            cellColumns[i] = binder.planColumn(i);
+            columns[i] = create(binder.planKey(i), binder.getTitles().get(cellColumns[i]), binder.planType(i));
+            byName.put(columns[i].name, columns[i]);
+        }
+    }
+
+    private static Column create(String name, String title, Class<?> fieldType){
+        if(fieldType == int.class || fieldType == Integer.class || fieldType == short.class || fieldType == Short.class
+                || fieldType == byte.class || fieldType == Byte.class){
+            return new IntColumn(name, title, fieldType);
+        }else if(fieldType == long.class || fieldType == Long.class || fieldType == Date.class
+                || fieldType == LocalDate.class || fieldType == LocalDateTime.class){
+            return new LongColumn(name, title, fieldType);
+        }else if(fieldType == double.class || fieldType == Double.class || fieldType == float.class || fieldType == Float.class){
+            return new DoubleColumn(name, title, fieldType);
+        }else if(fieldType == boolean.class || fieldType == Boolean.class){
+            return new BooleanColumn(name, title, fieldType);
+        }
+        return new StringColumn(name, title, fieldType);
+    }
+
+    /**
+     * 追加一行
+     * @param values 行数据，下标即列号
+     */
+    void append(List<String> values){
+        StreamRow row = values instanceof StreamRow ? (StreamRow) values : null;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].append(rowCount, values, row, cellColumns[i]);
+        }
+        rowCount ++;
+    }
+
+    /**
+     * 读取完毕，数组截断为行数，字符串字典不再接受新值
+     */
+    void seal(){
+        for (Column column : columns) {
+            column.seal(rowCount);
+        }
+    }
+
+    /**
+     * 输出无法转换的单元格的汇总
+     */
+    void report(){
+        for (Column column : columns) {
+            if(column.failed > 0){
+                log.warn("标题" + column.title + "列共有" + column.failed + "条数据无法转换为" + column.fieldType.getSimpleName()
+                        + "，已记为空值，例如：" + column.firstFailure);
+            }
+        }
+    }
+
+    /**
+     * @return 页码
+     */
+    public int getSheetIndex() {
+        return sheetIndex;
+    }
+
+    /**
+     * @return 该页使用的映射id，可能为空
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return 行数
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return 各列的字段名（映射中的英文名称，无映射时为标题），按excel中的列顺序排列
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(new ArrayList<>(byName.keySet()));
+    }
+
+    /**
+     * @param name 字段名
+     * @return 该字段的列，不存在时为null
+     */
+    public Column getColumn(String name) {
+        return byName.get(name);
+    }
+
+    public IntColumn getIntColumn(String name) {
+        return typed(name, IntColumn.class);
+    }
+
+    public LongColumn getLongColumn(String name) {
+        return typed(name, LongColumn.class);
+    }
+
+    public DoubleColumn getDoubleColumn(String name) {
+        return typed(name, DoubleColumn.class);
+    }
+
+    public BooleanColumn getBooleanColumn(String name) {
+        return typed(name, BooleanColumn.class);
+    }
+
+    public StringColumn getStringColumn(String name) {
+        return typed(name, StringColumn.class);
+    }
+
+    /**
+     * @return 各列占用的堆内存字节数（估算）
+     */
+    public long memoryBytes(){
+        long bytes = 0;
+        for (Column column : columns) {
+            bytes += column.memoryBytes();
+        }
+        return bytes;
+    }
+
+    private <C extends Column> C typed(String name, Class<C> type){
+        Column column = byName.get(name);
+        if(null == column){
+            throw new IllegalArgumentException("字段" + name + "不在导入结果中");
+        }
+        if(!type.isInstance(column)){
+            throw new IllegalArgumentException("字段" + name + "为" + column.getClass().getSimpleName() + "，不是" + type.getSimpleName());
+        }
+        return type.cast(column);
+    }
+
+    @Override
+    public String toString() {
+        return "ExcelColumns{" +
+                "sheetIndex=" + sheetIndex +
+                ", id='" + id + '\'' +
+                ", rowCount=" + rowCount +
+                ", names=" + byName.keySet() +
+                '}';
+    }
+
+    private static boolean isBlank(String value){
+        return null == value || value.trim().isEmpty();
+    }
+
+    private static String text(List<String> values, int column){
+        return column < values.size() ? values.get(column) : null;
+    }
+
+    private static int grow(int capacity, int row){
+        return row < capacity ? capacity : Math.max(INITIAL_CAPACITY, Math.max(row + 1, capacity + (capacity >> 1)));
+    }
+
+    /**
+     * 一列数据，空值位图中置位的行为空单元格或无法转换的单元格
+     */
+    public abstract static class Column {
+
+        private final String name;
+
+        private final String title;
+
+        private final Class<?> fieldType;
+
+        final BitSet nulls = new BitSet();
+
+        int size;
+
+        private long failed;
+
+        private String firstFailure;
+
+        Column(String name, String title, Class<?> fieldType) {
+            this.name = name;
+            this.title = title;
+            this.fieldType = fieldType;
+        }
+
+        /**
+         * 追加一个单元格
+         * @param row 行下标
+         * @param values 行数据
+         * @param streamRow 流式解析的行，可以直接读取数字单元格的原始数值，为null时只按字符串转换
+         * @param column 列号
+         */
+        abstract void append(int row, List<String> values, StreamRow streamRow, int column);
+
+        /**
+         * 截断为行数
+         * @param rowCount 行数
+         */
+        abstract void seal(int rowCount);
+
+        abstract long memoryBytes();
+
+        /**
+         * @param row 行下标
+         * @return 该行的值，空值为null，会创建包装对象，批量计算时应直接使用基本类型数组
+         */
+        public abstract Object get(int row);
+
+        void fail(int row, String value){
+            nulls.set(row);
+            if(0 == failed ++){
+                firstFailure = value;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 映射中记录的字段类型，Map模式下为String
+         */
+        public Class<?> getFieldType() {
+            return fieldType;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param row 行下标
+         * @return 该行是否为空值
+         */
+        public boolean isNull(int row){
+            return nulls.get(row);
+        }
+
+        /**
+         * @return 空值位图，置位的行为空值，不要修改
+         */
+        public BitSet getNulls() {
+            return nulls;
+        }
+
+        /**
+         * @return 空值的个数
+         */
+        public int getNullCount(){
+            return nulls.cardinality();
+        }
+    }
+
+    public static final class IntColumn extends Column {
+
+        private int[] values = new int[0];
+
+        IntColumn(String name, String title, Class<?> fieldType) {
+            super(name, title, fieldType);
+        }
+
+        @Override
+        void append(int row, List<String> cells, StreamRow streamRow, int column) {
+            if(row >= values.length){
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            size = row + 1;
+            if(null != streamRow && streamRow.isNumeric(column)){
+                double d = streamRow.getNumber(column);
+                if(d == (int) d){
+                    values[row] = (int) d;
+                    return;
+                }
+            }
+            String value = text(cells, column);
+            if(isBlank(value)){
+                nulls.set(row);
+                return;
+            }
+            try {
+                values[row] = Integer.parseInt(value.trim());
+            }catch (NumberFormatException e){
+                fail(row, value);
+            }
+        }
+
+        @Override
+        void seal(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+            size = rowCount;
+        }
+
+        @Override
+        long memoryBytes() {
+            return ((long) values.length << 2) + (nulls.size() >> 3);
+        }
+
+        public int getInt(int row){
+            return values[row];
+        }
+
+        /**
+         * @return 全部行的值，长度为行数，空值为0，不要修改
+         */
+        public int[] getValues() {
+            return values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    public static final class LongColumn extends Column {
+
+        private long[] values = new long[0];
+
+        /**
+         * 日期类型的列使用，记住该列匹配的格式
+         */
+        private final DateParser dateParser;
+
+        LongColumn(String name, String title, Class<?> fieldType) {
+            super(name, title, fieldType);
+            this.dateParser = fieldType == long.class || fieldType == Long.class ? null : new DateParser();
+        }
+
+        @Override
+        void append(int row, List<String> cells, StreamRow streamRow, int column) {
+            if(row >= values.length){
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            size = row + 1;
+            if(null != streamRow){
+                if(null != dateParser && streamRow.isDate(column)){
+                    values[row] = DateUtil.getJavaDate(streamRow.getNumber(column)).getTime();
+                    return;
+                }
+                if(null == dateParser && streamRow.isNumeric(column)){
+                    double d = streamRow.getNumber(column);
+                    if(d == (long) d){
+                        values[row] = (long) d;
+                        return;
+                    }
+                }
+            }
+            String value = text(cells, column);
+            if(isBlank(value)){
+                nulls.set(row);
+                return;
+            }
+            if(null != dateParser){
+                LocalDateTime dateTime = dateParser.parseLocalDateTime(value);
+                if(null == dateTime){
+                    fail(row, value);
+                }else{
+                    values[row] = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                }
+                return;
+            }
+            try {
+                values[row] = Long.parseLong(value.trim());
+            }catch (NumberFormatException e){
+                fail(row, value);
+            }
+        }
+
+        @Override
+        void seal(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+            size = rowCount;
+        }
+
+        @Override
+        long memoryBytes() {
+            return ((long) values.length << 3) + (nulls.size() >> 3);
+        }
+
+        /**
+         * @return 是否为日期列，日期列的值为系统时区的毫秒时间戳
+         */
+        public boolean isDate(){
+            return null != dateParser;
+        }
+
+        public long getLong(int row){
+            return values[row];
+        }
+
+        /**
+         * @return 全部行的值，长度为行数，空值为0，不要修改
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+
+        private double[] values = new double[0];
+
+        DoubleColumn(String name, String title, Class<?> fieldType) {
+            super(name, title, fieldType);
+        }
+
+        @Override
+        void append(int row, List<String> cells, StreamRow streamRow, int column) {
+            if(row >= values.length){
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            size = row + 1;
+            if(null != streamRow && streamRow.isNumeric(column)){
+                values[row] = streamRow.getNumber(column);
+                return;
+            }
+            String value = text(cells, column);
+            if(isBlank(value)){
+                nulls.set(row);
+                return;
+            }
+            try {
+                values[row] = Double.parseDouble(value.trim());
+            }catch (NumberFormatException e){
+                fail(row, value);
+            }
+        }
+
+        @Override
+        void seal(int rowCount) {
+            values = Arrays.copyOf(values, rowCount);
+            size = rowCount;
+        }
+
+        @Override
+        long memoryBytes() {
+            return ((long) values.length << 3) + (nulls.size() >> 3);
+        }
+
+        public double getDouble(int row){
+            return values[row];
+        }
+
+        /**
+         * @return 全部行的值，长度为行数，空值为0，不要修改
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+    }
+
+    public static final class BooleanColumn extends Column {
+
+        private final BitSet values = new BitSet();
+
+        BooleanColumn(String name, String title, Class<?> fieldType) {
+            super(name, title, fieldType);
+        }
+
+        @Override
+        void append(int row, List<String> cells, StreamRow streamRow, int column) {
+            size = row + 1;
+            String value = text(cells, column);
+            if(isBlank(value)){
+                nulls.set(row);
+                return;
+            }
+            if(Boolean.parseBoolean(value.trim())){
+                values.set(row);
+            }
+        }
+
+        @Override
+        void seal(int rowCount) {
+            size = rowCount;
+        }
+
+        @Override
+        long memoryBytes() {
+            return (values.size() >> 3) + (nulls.size() >> 3);
+        }
+
+        public boolean getBoolean(int row){
+            return values.get(row);
+        }
+
+        /**
+         * @return 值为true的行，不要修改
+         */
+        public BitSet getValues() {
+            return values;
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values.get(row);
+        }
+    }
+
+    /**
+     * 字典编码的字符串列，每行保存字符串在字典中的下标，相同的字符串只保存一份，空单元格的下标为-1
+     */
+    public static final class StringColumn extends Column {
+
+        private int[] codes = new int[0];
+
+        private List<String> dictionary = new ArrayList<>();
+
+        /**
+         * 字符串到下标的索引，读取完毕后释放
+         */
+        private Map<String, Integer> index = new HashMap<>();
+
+        StringColumn(String name, String title, Class<?> fieldType) {
+            super(name, title, fieldType);
+        }
+
+        @Override
+        void append(int row, List<String> cells, StreamRow streamRow, int column) {
+            if(row >= codes.length){
+                codes = Arrays.copyOf(codes, grow(codes.length, row));
+            }
+            size = row + 1;
+            String value = text(cells, column);
+            if(null == value || value.isEmpty()){
+                codes[row] = -1;
+                nulls.set(row);
+                return;
+            }
+            Integer code = index.get(value);
+            if(null == code){
+                code = dictionary.size();
+                dictionary.add(value);
+                index.put(value, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        void seal(int rowCount) {
+            codes = Arrays.copyOf(codes, rowCount);
+            size = rowCount;
+            ((ArrayList<String>) dictionary).trimToSize();
+            dictionary = Collections.unmodifiableList(dictionary);
+            index = null;
+        }
+
+        @Override
+        long memoryBytes() {
+            long bytes = ((long) codes.length << 2) + (nulls.size() >> 3);
+            for (String value : dictionary) {
+                //String对象及char数组的大致开销
+                bytes += 56 + ((long) value.length() << 1);
+            }
+            return bytes;
+        }
+
+        /**
+         * @param row 行下标
+         * @return 该行在字典中的下标，空值为-1
+         */
+        public int getCode(int row){
+            return codes[row];
+        }
+
+        /**
+         * @return 全部行在字典中的下标，长度为行数，空值为-1，不要修改
+         */
+        public int[] getCodes() {
+            return codes;
+        }
+
+        /**
+         * @return 字典，下标即编码
+         */
+        public List<String> getDictionary() {
+            return dictionary;
+        }
+
+        @Override
+        public String get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+    }
+}
@@ -3,7 +3,11 @@ package com.github.lisdocument.msio.unit.excel;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
 import com.github.lisdocument.msio.unit.func.OutExceptionHandler;
+import com.github.lisdocument.msio.unit.func.RowHandler;
+import com.github.lisdocument.msio.utils.SpringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
@@ -11,11 +15,20 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.validation.constraints.NotNull;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author bin
@@ -120,6 +133,641 @@ public class ExcelFactory {
         return new SimpleExcelBean(file,isChangeClass);
     }
 
+    /**
+     * 自助excel解析结果，根据文件头选择xls或xlsx的解析方式
+     * @param in 输入流
+     * @return 新的简单excel实例
+     */
+    public static IExcelBean getSingleSimpleInstance(@NotNull InputStream in){
+        return new SimpleExcelBean(in,true);
+    }
+
+    /**
+     * 自助excel解析结果，根据文件头选择xls或xlsx的解析方式
+     * @param path 文件路径
+     * @return 新的简单excel实例
+     */
+    public static IExcelBean getSingleSimpleInstance(@NotNull Path path){
+        return fromPath(path, ExcelFactory::getSingleSimpleInstance, ExcelFactory::getSingleSimpleInstance);
+    }
+
+    /**
+     * 获得单页的excel解析结果
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param in 输入流
+     * @param pageNo 页码,默认为0
+     * @return 新的实例
+     */
+    public static IExcelBean getSingleSimpleInstance(String id,@NotNull InputStream in,Integer pageNo){
+        return new SimpleExcelBean(id,in,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 获得单页的excel解析结果
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param path 文件路径
+     * @param pageNo 页码,默认为0
+     * @return 新的实例
+     */
+    public static IExcelBean getSingleSimpleInstance(String id,@NotNull Path path,Integer pageNo){
+        return fromPath(path, file -> getSingleSimpleInstance(id, file, pageNo), in -> getSingleSimpleInstance(id, in, pageNo));
+    }
+
+    /**
+     * 复数页的Excel解析结果
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param in 输入流
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的实例
+     */
+    public static IExcelBean getMultipleSimpleInstance(List<String> ids,@NotNull InputStream in,boolean isChangeClass){
+        if(ids != null && !ids.isEmpty()){
+            return new SimpleExcelBean(ids,in,isChangeClass);
+        }
+        return new SimpleExcelBean(in,isChangeClass);
+    }
+
+    /**
+     * 复数页的Excel解析结果
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param path 文件路径
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的实例
+     */
+    public static IExcelBean getMultipleSimpleInstance(List<String> ids,@NotNull Path path,boolean isChangeClass){
+        return fromPath(path, file -> getMultipleSimpleInstance(ids, file, isChangeClass), in -> getMultipleSimpleInstance(ids, in, isChangeClass));
+    }
+
+    /**
+     * 获得单页的多级标题excel解析结果，格式与复杂Excel导出一致
+     * @param id 指定复杂映射的id，如果为空的话根据第一层标题自动寻找
+     * @param file 文件流
+     * @param pageNo 页码,默认为0
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getSingleComplexInstance(String id, @NotNull MultipartFile file,Integer pageNo){
+        return new ComplexExcelBean(id,file,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 获得单页的多级标题excel解析结果，格式与复杂Excel导出一致
+     * @param id 指定复杂映射的id，如果为空的话根据第一层标题自动寻找
+     * @param file 文件
+     * @param pageNo 页码,默认为0
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getSingleComplexInstance(String id, @NotNull File file,Integer pageNo){
+        return new ComplexExcelBean(id,file,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 获得单页的多级标题excel解析结果，格式与复杂Excel导出一致
+     * @param id 指定复杂映射的id，如果为空的话根据第一层标题自动寻找
+     * @param path 文件路径
+     * @param pageNo 页码,默认为0
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getSingleComplexInstance(String id, @NotNull Path path,Integer pageNo){
+        return fromPath(path, file -> getSingleComplexInstance(id, file, pageNo), in -> getSingleComplexInstance(id, in, pageNo));
+    }
+
+    /**
+     * 获得单页的多级标题excel解析结果，格式与复杂Excel导出一致
+     * @param id 指定复杂映射的id，如果为空的话根据第一层标题自动寻找
+     * @param in 输入流
+     * @param pageNo 页码,默认为0
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getSingleComplexInstance(String id, @NotNull InputStream in,Integer pageNo){
+        return new ComplexExcelBean(id,in,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 复数页的多级标题Excel解析结果，每页在首次获取时才解析
+     * @param ids 单页复杂映射id集合，为空时每页自动查询映射，若那个位置的元素为空，isChangeClass为true时自动查询，为false时跳过该页
+     * @param file 文件流
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getMultipleComplexInstance(List<String> ids,@NotNull MultipartFile file,boolean isChangeClass){
+        return new ComplexExcelBean(ids,file,isChangeClass);
+    }
+
+    /**
+     * 复数页的多级标题Excel解析结果，每页在首次获取时才解析
+     * @param ids 单页复杂映射id集合，为空时每页自动查询映射，若那个位置的元素为空，isChangeClass为true时自动查询，为false时跳过该页
+     * @param file 文件
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getMultipleComplexInstance(List<String> ids,@NotNull File file,boolean isChangeClass){
+        return new ComplexExcelBean(ids,file,isChangeClass);
+    }
+
+    /**
+     * 复数页的多级标题Excel解析结果，每页在首次获取时才解析
+     * @param ids 单页复杂映射id集合，为空时每页自动查询映射，若那个位置的元素为空，isChangeClass为true时自动查询，为false时跳过该页
+     * @param path 文件路径
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getMultipleComplexInstance(List<String> ids,@NotNull Path path,boolean isChangeClass){
+        return fromPath(path, file -> getMultipleComplexInstance(ids, file, isChangeClass), in -> getMultipleComplexInstance(ids, in, isChangeClass));
+    }
+
+    /**
+     * 复数页的多级标题Excel解析结果，每页在首次获取时才解析
+     * @param ids 单页复杂映射id集合，为空时每页自动查询映射，若那个位置的元素为空，isChangeClass为true时自动查询，为false时跳过该页
+     * @param in 输入流
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的复杂excel实例
+     */
+    public static IExcelBean getMultipleComplexInstance(List<String> ids,@NotNull InputStream in,boolean isChangeClass){
+        return new ComplexExcelBean(ids,in,isChangeClass);
+    }
+
+    /**
+     * 复数页的并行Excel解析结果，每页的标题匹配及转换在线程池中并行执行，页的路由规则与getMultipleSimpleInstance一致，
+     * 各页共用同一个工作簿，单元格的读取加锁串行，只有转换并行；线程池拒绝的页在getData时按需解析
+     * @param ids 单页id集合，为空时每页自动查询映射，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param file 文件流
+     * @param isChangeClass 是否自动加载映射
+     * @param executor 执行解析任务的线程池，为null时使用ForkJoinPool.commonPool()
+     * @return 新的实例，返回时所有页均已解析完毕
+     */
+    public static IExcelBean getParallelSimpleInstance(List<String> ids,@NotNull MultipartFile file,boolean isChangeClass,Executor executor){
+        SimpleExcelBean bean = (SimpleExcelBean) getMultipleSimpleInstance(ids, file, isChangeClass);
+        bean.loadAll(executor == null ? ForkJoinPool.commonPool() : executor);
+        return bean;
+    }
+
+    /**
+     * 复数页的并行Excel解析结果，每页的标题匹配及转换在线程池中并行执行，页的路由规则与getMultipleSimpleInstance一致，
+     * 各页共用同一个工作簿，单元格的读取加锁串行，只有转换并行；线程池拒绝的页在getData时按需解析
+     * @param ids 单页id集合，为空时每页自动查询映射，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param file 文件
+     * @param isChangeClass 是否自动加载映射
+     * @param executor 执行解析任务的线程池，为null时使用ForkJoinPool.commonPool()
+     * @return 新的实例，返回时所有页均已解析完毕
+     */
+    public static IExcelBean getParallelSimpleInstance(List<String> ids,@NotNull File file,boolean isChangeClass,Executor executor){
+        SimpleExcelBean bean = (SimpleExcelBean) getMultipleSimpleInstance(ids, file, isChangeClass);
+        bean.loadAll(executor == null ? ForkJoinPool.commonPool() : executor);
+        return bean;
+    }
+
+    /**
+     * 流式excel解析结果，支持xls及xlsx，逐行读取不构建整个工作簿，适合大文件
+     * @param file 文件流
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getSingleStreamInstance(@NotNull MultipartFile file){
+        return new StreamExcelBean(file);
+    }
+
+    /**
+     * 流式excel解析结果，支持xls及xlsx，逐行读取不构建整个工作簿，适合大文件
+     * @param file 文件
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getSingleStreamInstance(@NotNull File file){
+        return new StreamExcelBean(file);
+    }
+
+    /**
+     * 流式excel解析结果，支持xls及xlsx，逐行读取不构建整个工作簿，适合大文件
+     * @param path 文件路径
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getSingleStreamInstance(@NotNull Path path){
+        return new StreamExcelBean(path);
+    }
+
+    /**
+     * 获得单页的流式excel解析结果，其余页不会被解析
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param file 文件流
+     * @param pageNo 页码,默认为0
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getSingleStreamInstance(String id, @NotNull MultipartFile file,Integer pageNo){
+        return new StreamExcelBean(id,file,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 获得单页的流式excel解析结果，其余页不会被解析
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param file 文件
+     * @param pageNo 页码,默认为0
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getSingleStreamInstance(String id, @NotNull File file,Integer pageNo){
+        return new StreamExcelBean(id,file,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 获得单页的流式excel解析结果，其余页不会被解析
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param path 文件路径
+     * @param pageNo 页码,默认为0
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getSingleStreamInstance(String id, @NotNull Path path,Integer pageNo){
+        return new StreamExcelBean(id,path,pageNo == null ? 0 : pageNo);
+    }
+
+    /**
+     * 复数页的流式Excel解析结果
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param file 文件流
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getMultipleStreamInstance(List<String> ids,@NotNull MultipartFile file,boolean isChangeClass){
+        if(ids != null && !ids.isEmpty()){
+            return new StreamExcelBean(ids,file,isChangeClass);
+        }
+        return new StreamExcelBean(file);
+    }
+
+    /**
+     * 复数页的流式Excel解析结果
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param file 文件
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getMultipleStreamInstance(List<String> ids,@NotNull File file,boolean isChangeClass){
+        if(ids != null && !ids.isEmpty()){
+            return new StreamExcelBean(ids,file,isChangeClass);
+        }
+        return new StreamExcelBean(file);
+    }
+
+    /**
+     * 复数页的流式Excel解析结果
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param path 文件路径
+     * @param isChangeClass 是否自动加载映射
+     * @return 新的流式excel实例
+     */
+    public static IExcelBean getMultipleStreamInstance(List<String> ids,@NotNull Path path,boolean isChangeClass){
+        if(ids != null && !ids.isEmpty()){
+            return new StreamExcelBean(ids,path,isChangeClass);
+        }
+        return new StreamExcelBean(path);
+    }
+
+    /**
+     * 流式逐行导入，每行转换后立即交给处理程序，不保留任何数据，适合边解析边入库，每页均根据标题自动寻找映射
+     * @param file 文件流
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull MultipartFile file, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(null, null, null, true, handler);
+        StreamExcelBean.read(file, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 流式逐行导入，每行转换后立即交给处理程序，不保留任何数据，适合边解析边入库，每页均根据标题自动寻找映射
+     * @param file 文件
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull File file, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(null, null, null, true, handler);
+        StreamExcelBean.read(file, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 流式逐行导入，每行转换后立即交给处理程序，不保留任何数据，适合边解析边入库，每页均根据标题自动寻找映射
+     * @param path 文件路径
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull Path path, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(null, null, null, true, handler);
+        StreamExcelBean.read(path, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 单页的流式逐行导入，其余页不会被解析
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param file 文件流
+     * @param pageNo 页码,默认为0
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(String id, @NotNull MultipartFile file, Integer pageNo, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(id, pageNo == null ? 0 : pageNo, null, true, handler);
+        StreamExcelBean.read(file, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 单页的流式逐行导入，其余页不会被解析
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param file 文件
+     * @param pageNo 页码,默认为0
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(String id, @NotNull File file, Integer pageNo, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(id, pageNo == null ? 0 : pageNo, null, true, handler);
+        StreamExcelBean.read(file, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 单页的流式逐行导入，其余页不会被解析
+     * @param id 指定映射的id，如果为空的话自动寻找
+     * @param path 文件路径
+     * @param pageNo 页码,默认为0
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(String id, @NotNull Path path, Integer pageNo, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(id, pageNo == null ? 0 : pageNo, null, true, handler);
+        StreamExcelBean.read(path, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 复数页的流式逐行导入
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param file 文件流
+     * @param isChangeClass 是否自动加载映射
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(List<String> ids, @NotNull MultipartFile file, boolean isChangeClass, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(null, null, ids, isChangeClass, handler);
+        StreamExcelBean.read(file, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 复数页的流式逐行导入
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param file 文件
+     * @param isChangeClass 是否自动加载映射
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(List<String> ids, @NotNull File file, boolean isChangeClass, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(null, null, ids, isChangeClass, handler);
+        StreamExcelBean.read(file, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 复数页的流式逐行导入
+     * @param ids 单页id集合，会根据id索引每页，若那个位置的元素为空，isChangeClass为true时自动查询索引，为false时跳过该页
+     * @param path 文件路径
+     * @param isChangeClass 是否自动加载映射
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(List<String> ids, @NotNull Path path, boolean isChangeClass, @NotNull RowHandler<T> handler){
+        SheetRowDispatcher dispatcher = streamDispatcher(null, null, ids, isChangeClass, handler);
+        StreamExcelBean.read(path, dispatcher);
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 按配置项流式逐行导入，开启流水线后读取、转换、交付分别在读取线程、转换线程池、当前线程中进行，
+     * 交付顺序与excel中的行顺序一致，RowHandler始终在当前线程中被调用
+     * @param file 文件流
+     * @param option 导入配置项，包含页的路由规则以及流水线参数
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull MultipartFile file, @NotNull ExcelImportOption option, @NotNull RowHandler<T> handler){
+        return readStream(option, handler, listener -> StreamExcelBean.read(file, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项流式逐行导入，开启流水线后读取、转换、交付分别在读取线程、转换线程池、当前线程中进行，
+     * 交付顺序与excel中的行顺序一致，RowHandler始终在当前线程中被调用
+     * @param file 文件
+     * @param option 导入配置项，包含页的路由规则以及流水线参数
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull File file, @NotNull ExcelImportOption option, @NotNull RowHandler<T> handler){
+        return readStream(option, handler, listener -> StreamExcelBean.read(file, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项流式逐行导入输入流，根据文件头选择xls或xlsx的解析方式
+     * @param in 输入流
+     * @param option 导入配置项，包含页的路由规则以及流水线参数
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull InputStream in, @NotNull ExcelImportOption option, @NotNull RowHandler<T> handler){
+        return readStream(option, handler, listener -> StreamExcelBean.read(in, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项流式逐行导入，根据文件头选择xls或xlsx的解析方式
+     * @param path 文件路径
+     * @param option 导入配置项，包含页的路由规则以及流水线参数
+     * @param handler 逐行处理程序，抛出的异常会中断导入
+     * @param <T> 转换后的类型
+     * @return 读取到的总页数
+     */
+    public static <T> int readStream(@NotNull Path path, @NotNull ExcelImportOption option, @NotNull RowHandler<T> handler){
+        return readStream(option, handler, listener -> StreamExcelBean.read(path, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 打开流式导入的游标，读取线程按配置项解析并转换，调用线程通过ExcelRowCursor.next逐批取出，
+     * 配合setRowRange可以只读取大文件的开头，读到范围末尾或游标关闭后不再解析剩余部分，流水线参数中只有batchSize*queueCapacity作为积压上限生效
+     * @param file 文件
+     * @param option 导入配置项
+     * @param <T> 转换后的类型
+     * @return 游标，使用完毕后必须close
+     */
+    public static <T> ExcelRowCursor<T> openCursor(@NotNull File file, @NotNull ExcelImportOption option){
+        return openCursor(option, listener -> StreamExcelBean.read(file, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 打开流式导入的游标，见openCursor(File, ExcelImportOption)
+     * @param file 文件流
+     * @param option 导入配置项
+     * @param <T> 转换后的类型
+     * @return 游标，使用完毕后必须close
+     */
+    public static <T> ExcelRowCursor<T> openCursor(@NotNull MultipartFile file, @NotNull ExcelImportOption option){
+        return openCursor(option, listener -> StreamExcelBean.read(file, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 打开流式导入的游标，见openCursor(File, ExcelImportOption)，输入流在读取线程中读取，游标关闭前不能关闭输入流
+     * @param in 输入流
+     * @param option 导入配置项
+     * @param <T> 转换后的类型
+     * @return 游标，使用完毕后必须close
+     */
+    public static <T> ExcelRowCursor<T> openCursor(@NotNull InputStream in, @NotNull ExcelImportOption option){
+        return openCursor(option, listener -> StreamExcelBean.read(in, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 打开流式导入的游标，见openCursor(File, ExcelImportOption)
+     * @param path 文件路径
+     * @param option 导入配置项
+     * @param <T> 转换后的类型
+     * @return 游标，使用完毕后必须close
+     */
+    public static <T> ExcelRowCursor<T> openCursor(@NotNull Path path, @NotNull ExcelImportOption option){
+        return openCursor(option, listener -> StreamExcelBean.read(path, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项列式导入，每个有映射的字段按映射中的字段类型存放在基本类型数组或字典编码的字符串列中，不创建Pojo，
+     * 适合导入后立即按列统计的场景，内存约为Pojo列表的几分之一；页的路由、去重、投影及行范围与readStream一致，流水线参数不生效，
+     * 某页转换失败时记录日志并继续读取其他页，该页不出现在结果中
+     * @param file 文件
+     * @param option 导入配置项
+     * @return 每页的列式结果，键为页码，按页的顺序排列，不包含转换失败的页
+     */
+    public static Map<Integer, ExcelColumns> readColumns(@NotNull File file, @NotNull ExcelImportOption option){
+        return readColumns(option, listener -> StreamExcelBean.read(file, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项列式导入，见readColumns(File, ExcelImportOption)
+     * @param file 文件流
+     * @param option 导入配置项
+     * @return 每页的列式结果，键为页码，按页的顺序排列，不包含转换失败的页
+     */
+    public static Map<Integer, ExcelColumns> readColumns(@NotNull MultipartFile file, @NotNull ExcelImportOption option){
+        return readColumns(option, listener -> StreamExcelBean.read(file, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项列式导入，见readColumns(File, ExcelImportOption)
+     * @param in 输入流
+     * @param option 导入配置项
+     * @return 每页的列式结果，键为页码，按页的顺序排列，不包含转换失败的页
+     */
+    public static Map<Integer, ExcelColumns> readColumns(@NotNull InputStream in, @NotNull ExcelImportOption option){
+        return readColumns(option, listener -> StreamExcelBean.read(in, listener, option.getStringStorage()));
+    }
+
+    /**
+     * 按配置项列式导入，见readColumns(File, ExcelImportOption)
+     * @param path 文件路径
+     * @param option 导入配置项
+     * @return 每页的列式结果，键为页码，按页的顺序排列，不包含转换失败的页
+     */
+    public static Map<Integer, ExcelColumns> readColumns(@NotNull Path path, @NotNull ExcelImportOption option){
+        return readColumns(option, listener -> StreamExcelBean.read(path, listener, option.getStringStorage()));
+    }
+
+    private static Map<Integer, ExcelColumns> readColumns(ExcelImportOption option, Consumer<IExcelRowListener> reader){
+        RowDeduplicator distinct = RowDeduplicator.of(option.getDistinct(), option.getDistinctMemory());
+        try {
+            ColumnarRowDispatcher dispatcher = new ColumnarRowDispatcher(SpringUtils.getBean(MsIoContainer.class),
+                    SpringUtils.getBean(IFormatConversion.class), option);
+            configure(dispatcher, option, distinct);
+            reader.accept(dispatcher);
+            return dispatcher.getResult();
+        }finally {
+            if(null != distinct){
+                distinct.report();
+                distinct.close();
+            }
+        }
+    }
+
+    private static int readStream(ExcelImportOption option, RowHandler<?> handler, Consumer<IExcelRowListener> reader){
+        RowDeduplicator distinct = RowDeduplicator.of(option.getDistinct(), option.getDistinctMemory());
+        try {
+            if(option.isPipelined()){
+                PipelinedRowDispatcher dispatcher = new PipelinedRowDispatcher(SpringUtils.getBean(MsIoContainer.class),
+                        SpringUtils.getBean(IFormatConversion.class), option, handler);
+                configure(dispatcher, option, distinct);
+                dispatcher.run(reader);
+                return dispatcher.getSheetSize();
+            }
+            SheetRowDispatcher dispatcher = streamDispatcher(option.getId(), option.getPageNo(), option.getIds(), option.isChangeClass(), handler);
+            configure(dispatcher, option, distinct);
+            reader.accept(dispatcher);
+            return dispatcher.getSheetSize();
+        }finally {
+            if(null != distinct){
+                distinct.report();
+                distinct.close();
+            }
+        }
+    }
+
+    private static <T> ExcelRowCursor<T> openCursor(ExcelImportOption option, Consumer<IExcelRowListener> reader){
+        RowDeduplicator distinct = RowDeduplicator.of(option.getDistinct(), option.getDistinctMemory());
+        ExcelRowCursor<T> cursor = new ExcelRowCursor<>(handler -> {
+            SheetRowDispatcher dispatcher = streamDispatcher(option.getId(), option.getPageNo(), option.getIds(), option.isChangeClass(), handler);
+            configure(dispatcher, option, distinct);
+            return dispatcher;
+        }, option.getBatchSize() * option.getQueueCapacity(), reader, () -> {
+            if(null != distinct){
+                distinct.report();
+                distinct.close();
+            }
+        });
+        cursor.start();
+        return cursor;
+    }
+
+    /**
+     * 默认文件系统中的路径按文件读取，其余文件系统（如zip中的文件）不支持toFile，通过流读取，流在返回前关闭
+     * @param path 文件路径
+     * @param byFile 按文件读取
+     * @param byStream 按流读取，返回前须读取完毕
+     * @param <R> 读取结果的类型
+     * @return 读取结果
+     */
+    private static <R> R fromPath(Path path, Function<File, R> byFile, Function<InputStream, R> byStream){
+        if(path.getFileSystem() == FileSystems.getDefault()){
+            return byFile.apply(path.toFile());
+        }
+        try (InputStream in = Files.newInputStream(path)){
+            return byStream.apply(in);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
+    }
+
+    private static void configure(SheetRowDispatcher dispatcher, ExcelImportOption option, RowDeduplicator distinct){
+        dispatcher.setDistinct(distinct);
+        dispatcher.setProjection(option.getProjection());
+        dispatcher.setRowRange(option.getRowFrom(), option.getRowTo());
+    }
+
+    private static SheetRowDispatcher streamDispatcher(String id, Integer pageNo, List<String> ids, boolean isChangeClass, RowHandler<?> handler){
+        return new SheetRowDispatcher(SpringUtils.getBean(MsIoContainer.class), SpringUtils.getBean(IFormatConversion.class),
+                id, pageNo, ids == null || ids.isEmpty() ? null : ids, isChangeClass, handler);
+    }
+
     /**
      * 获取导出集成类
      * @param data 数据
@@ -0,0 +1,237 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流式导入的配置项，包含页的路由规则以及流水线导入的参数
+ * @author Libin
+ * @version 1.0.2
+ */
+public class ExcelImportOption {
+
+    /**
+     * 单页模式指定的映射id，为空则自行查询
+     */
+    private String id;
+
+    /**
+     * 单页模式的页码，为null时解析全部页
+     */
+    private Integer pageNo;
+
+    /**
+     * 每页的映射id池，为空时每页均自动匹配
+     */
+    private List<String> ids;
+
+    /**
+     * id池中未指定映射的页是否自动匹配，为false则省略该页
+     */
+    private boolean changeClass = true;
+
+    /**
+     * 是否启用流水线导入：读取线程解析行，转换线程池并行转换，调用线程按原始顺序交付
+     */
+    private boolean pipelined;
+
+    /**
+     * 流水线的转换线程池，为null时使用ForkJoinPool.commonPool()
+     */
+    private Executor executor;
+
+    /**
+     * 每批交给转换线程池的行数
+     */
+    private int batchSize = 256;
+
+    /**
+     * 读取与交付之间最多积压的批数，积压满时读取线程阻塞
+     */
+    private int queueCapacity = 16;
+
+    /**
+     * 去重字段（映射中的英文名称，无映射时为标题，与投影一致），为null时不去重，为空时整行去重；去重字段相同的行只保留第一次出现的一行，
+     * 同一映射的各页共用指纹，不同映射的页互不影响，缺少去重字段的页不去重，去重在转换之前根据原始字符串进行
+     */
+    private List<String> distinct;
+
+    /**
+     * 每个映射的去重指纹在内存中的上限（字节），超过后溢出到临时文件，为0时不溢出
+     */
+    private long distinctMemory = 64L * 1024 * 1024;
+
+    /**
+     * 列投影，需要绑定的字段（映射中的英文名称，无映射时为标题），为null时读取全部列，为空时只读取有映射的列，
+     * 其余列在解析时直接跳过，不做字符串及格式转换；同时去重时去重列始终读取，整行去重只比较读取的列
+     */
+    private List<String> projection;
+
+    /**
+     * 每页导入的数据行范围[rowFrom, rowTo)，按标题行之后的数据行计数，从0开始，空行不计入，
+     * 读到rowTo之后不再解析该页的剩余部分，单页模式下同时停止读取之后的页
+     */
+    private int rowFrom;
+
+    private int rowTo = Integer.MAX_VALUE;
+
+    /**
+     * xlsx共享字符串表的存放方式，文本较多的文件使用ARENA或DISK可以大幅减少堆内存
+     */
+    private StringStorage stringStorage = StringStorage.HEAP;
+
+    public String getId() {
+        return id;
+    }
+
+    public ExcelImportOption setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public Integer getPageNo() {
+        return pageNo;
+    }
+
+    public ExcelImportOption setPageNo(Integer pageNo) {
+        this.pageNo = pageNo;
+        return this;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public ExcelImportOption setIds(List<String> ids) {
+        this.ids = ids;
+        return this;
+    }
+
+    public boolean isChangeClass() {
+        return changeClass;
+    }
+
+    public ExcelImportOption setChangeClass(boolean changeClass) {
+        this.changeClass = changeClass;
+        return this;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public ExcelImportOption setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return null == executor ? ForkJoinPool.commonPool() : executor;
+    }
+
+    public ExcelImportOption setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public ExcelImportOption setBatchSize(int batchSize) {
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public ExcelImportOption setQueueCapacity(int queueCapacity) {
+        if(queueCapacity <= 0){
+            throw new IllegalArgumentException("queueCapacity必须大于0");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public List<String> getDistinct() {
+        return distinct;
+    }
+
+    public ExcelImportOption setDistinct(String... distinct) {
+        this.distinct = null == distinct ? null : Arrays.asList(distinct);
+        return this;
+    }
+
+    public StringStorage getStringStorage() {
+        return stringStorage;
+    }
+
+    public ExcelImportOption setStringStorage(StringStorage stringStorage) {
+        this.stringStorage = null == stringStorage ? StringStorage.HEAP : stringStorage;
+        return this;
+    }
+
+    public int getRowFrom() {
+        return rowFrom;
+    }
+
+    public int getRowTo() {
+        return rowTo;
+    }
+
+    public ExcelImportOption setRowRange(int rowFrom, int rowTo) {
+        if(rowFrom < 0 || rowTo < rowFrom){
+            throw new IllegalArgumentException("行范围必须满足0 <= rowFrom <= rowTo");
+        }
+        this.rowFrom = rowFrom;
+        this.rowTo = rowTo;
+        return this;
+    }
+
+    public List<String> getProjection() {
+        return projection;
+    }
+
+    public ExcelImportOption setProjection(String... projection) {
+        this.projection = null == projection ? null : Arrays.asList(projection);
+        return this;
+    }
+
+    public long getDistinctMemory() {
+        return distinctMemory;
+    }
+
+    public ExcelImportOption setDistinctMemory(long distinctMemory) {
+        if(distinctMemory < 0){
+            throw new IllegalArgumentException("distinctMemory必须不小于0");
+        }
+        this.distinctMemory = distinctMemory;
+        return this;
+    }
+
+    /**
+     * xlsx共享字符串表的存放方式，xls不受影响
+     */
+    public enum StringStorage {
+        /**
+         * 每个字符串一个String对象，读取最快，内存占用最大
+         */
+        HEAP,
+        /**
+         * 以UTF-8存放在堆内的字节块中，按序号即时解码，内存约为HEAP的三分之一到五分之一
+         */
+        ARENA,
+        /**
+         * 以UTF-8存放在内存映射的临时文件中，堆内只保留每个字符串的位置，读取完毕后删除临时文件
+         */
+        DISK
+    }
+}
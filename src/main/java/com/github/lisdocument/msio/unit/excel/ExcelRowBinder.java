@@ -0,0 +1,707 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.utils.DateParser;
+import com.github.lisdocument.msio.utils.ImportAccessor;
+import com.github.lisdocument.msio.utils.MsUtils;
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 单页导入的行绑定器，在标题行匹配到映射之后创建，
+ * 负责将一行数据转换为映射对象（Pojo或者Map），DOM解析与流式解析共用同一套转换逻辑，
+ * 转换方法及setter在创建时解析为按列排列的数组，逐行转换时仅按下标访问，setter由映射注册时生成的ImportAccessor提供，
+ * 数字及日期单元格绑定到数字或日期字段时直接使用单元格的数值，只有目标为String、类型不匹配或转换方法被重写时才经过字符串转换
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class ExcelRowBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ExcelRowBinder.class);
+
+    private static final byte KIND_STRING = 0;
+
+    private static final byte KIND_CONVERT = 1;
+
+    private static final byte KIND_INT = 2;
+
+    private static final byte KIND_LONG = 3;
+
+    private static final byte KIND_DOUBLE = 4;
+
+    private static final byte KIND_BOOLEAN = 5;
+
+    /**
+     * 以下类型数字或日期单元格直接赋值，其余单元格使用转换方法
+     */
+    private static final byte KIND_INTEGER_BOXED = 6;
+
+    private static final byte KIND_LONG_BOXED = 7;
+
+    private static final byte KIND_DOUBLE_BOXED = 8;
+
+    private static final byte KIND_BIG_DECIMAL = 9;
+
+    private static final byte KIND_DATE = 10;
+
+    private static final byte KIND_LOCAL_DATE = 11;
+
+    private static final byte KIND_LOCAL_DATE_TIME = 12;
+
+    private static final byte CELL_TEXT = 0;
+
+    private static final byte CELL_NUMERIC = 1;
+
+    private static final byte CELL_DATE = 2;
+
+    /**
+     * 标题行数据，下标即列号
+     */
+    private final List<String> titles;
+
+    /**
+     * 当前页使用的映射id，可能为空
+     */
+    private final String id;
+
+    /**
+     * 解析结果类型，Map或者Pojo
+     */
+    private final Class<?> clazz;
+
+    private final IFormatConversion formatConversion;
+
+    /**
+     * 绑定计划，以下数组下标一一对应，仅包含有映射的列，标题匹配后一次性生成，逐行转换时不再查找映射及拼接方法名
+     * columns：excel中的列号
+     */
+    private final int[] columns;
+
+    /**
+     * Map模式下的键（英文名称）
+     */
+    private final String[] keys;
+
+    /**
+     * Pojo模式下的赋值方式，见KIND_*
+     */
+    private final byte[] kinds;
+
+    /**
+     * Pojo模式下的转换方法，String以外的字段均有，基本类型为其包装类型的转换方法
+     */
+    private final Method[] converters;
+
+    /**
+     * Pojo模式下setter在访问器中的下标
+     */
+    private final int[] setters;
+
+    private final ImportAccessor accessor;
+
+    /**
+     * Pojo模式下日期列的解析器，仅日期类型且未重写默认转换方法的列使用，每列一个，记住该列匹配的格式
+     */
+    private final DateParser[] dateParsers;
+
+    /**
+     * Pojo模式下转换方法被IFormatConversion的实现类重写的列，这些列的数字及日期单元格同样经过转换方法，不直接赋值，
+     * int/long/double/boolean使用包装类型的转换方法，未重写时直接解析为基本类型
+     */
+    private final boolean[] customConverters;
+
+    private ExcelRowBinder(List<String> titles, String id, Class<?> clazz, IFormatConversion formatConversion, int[] columns,
+                           String[] keys, byte[] kinds, Method[] converters, int[] setters, ImportAccessor accessor) {
+        this.titles = titles;
+        this.id = id;
+        this.clazz = clazz;
+        this.formatConversion = formatConversion;
+        this.columns = columns;
+        this.keys = keys;
+        this.kinds = kinds;
+        this.converters = converters;
+        this.setters = setters;
+        this.accessor = accessor;
+        this.dateParsers = new DateParser[columns.length];
+        this.customConverters = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            customConverters[i] = null != converters[i] && converters[i].getDeclaringClass() != IFormatConversion.class;
+            if(isDateKind(kinds[i]) && !customConverters[i]){
+                dateParsers[i] = new DateParser();
+            }
+        }
+    }
+
+    /**
+     * 根据标题行创建绑定器，同时生成当前页的绑定计划
+     * @param msIoContainer 映射容器
+     * @param formatConversion 导入格式转换器
+     * @param id 指定的映射id，为空或者isChangeClass为true时根据标题自动匹配
+     * @param isChangeClass 是否根据标题自动匹配映射
+     * @param titles 标题行数据
+     * @return 当前页的绑定器
+     * @throws NoSuchMethodException 映射的字段找不到对应的转换方法
+     */
+    public static ExcelRowBinder build(MsIoContainer msIoContainer, IFormatConversion formatConversion,
+                                       String id, boolean isChangeClass, List<String> titles) throws NoSuchMethodException{
+        return build(msIoContainer, formatConversion, id, isChangeClass, titles, null);
+    }
+
+    /**
+     * 根据标题行创建只绑定部分字段的绑定器，其余字段保持默认值（Map模式下不放入）
+     * @param msIoContainer 映射容器
+     * @param formatConversion 导入格式转换器
+     * @param id 指定的映射id，为空或者isChangeClass为true时根据标题自动匹配
+     * @param isChangeClass 是否根据标题自动匹配映射
+     * @param titles 标题行数据
+     * @param projection 需要绑定的字段（映射中的英文名称，无映射时为标题），为null或空时绑定全部有映射的列
+     * @return 当前页的绑定器
+     * @throws NoSuchMethodException 映射的字段找不到对应的转换方法
+     */
+    public static ExcelRowBinder build(MsIoContainer msIoContainer, IFormatConversion formatConversion, String id, boolean isChangeClass,
+                                       List<String> titles, Collection<String> projection) throws NoSuchMethodException{
+        if(titles == null || titles.size() == 0){
+            throw new NullPointerException("标题行为空，请检查格式");
+        }
+        String key = id;
+        //若id为null，则自动匹配
+        if(id == null || isChangeClass){
+            key = msIoContainer.match(titles,false);
+        }
+        LinkedHashMap<String, MsIoContainer.Information> mapping = msIoContainer.get(key);
+        Class<?> clazz = msIoContainer.getClazz(key);
+        clazz = null == clazz ? Map.class : clazz;
+        LinkedHashMap<String, String> inversion = MsUtils.mapInversion(mapping);
+        if(inversion.isEmpty()){
+            titles.forEach(s -> inversion.put(s,s));
+        }
+        if(null != projection && projection.isEmpty()){
+            projection = null;
+        }
+        if(null != projection && null != mapping && !mapping.isEmpty()){
+            for (String field : projection) {
+                if(!mapping.containsKey(field)){
+                    log.warn("投影字段" + field + "不在映射" + key + "中，已忽略");
+                }
+            }
+        }
+        int size = 0;
+        int[] columns = new int[titles.size()];
+        String[] keys = new String[titles.size()];
+        byte[] kinds = new byte[titles.size()];
+        Method[] converters = new Method[titles.size()];
+        int[] setters = new int[titles.size()];
+        ImportAccessor accessor = clazz == Map.class ? null : msIoContainer.getAccessor(clazz);
+        for (int i = 0; i < titles.size(); i++) {
+            String egTitle = inversion.get(titles.get(i));
+            if(null == egTitle || (null != projection && !projection.contains(egTitle))){
+                continue;
+            }
+            if(null == accessor){
+                columns[size] = i;
+                keys[size ++] = egTitle;
+                continue;
+            }
+            MsIoContainer.Information information = mapping.get(egTitle);
+            //标题未映射的列跳过
+            if(null == information){
+                continue;
+            }
+            int setter = accessor.indexOf(egTitle, information.getFieldType());
+            if(-1 == setter){
+                throw new NoSuchMethodException(clazz.getName() + "中找不到字段" + egTitle + "的set方法");
+            }
+            Class<?> fieldType = accessor.getType(setter);
+            columns[size] = i;
+            keys[size] = egTitle;
+            kinds[size] = kind(fieldType);
+            converters[size] = KIND_STRING == kinds[size] ? null : converter(formatConversion, fieldType);
+            setters[size ++] = setter;
+        }
+        return new ExcelRowBinder(titles, key, clazz, formatConversion, Arrays.copyOf(columns, size), Arrays.copyOf(keys, size),
+                Arrays.copyOf(kinds, size), Arrays.copyOf(converters, size), Arrays.copyOf(setters, size), accessor);
+    }
+
+    /**
+     * 根据字段类型确定赋值方式，int/long/double/boolean直接解析为基本类型赋值，不经过装箱
+     * @param fieldType 字段类型
+     * @return 赋值方式
+     */
+    private static byte kind(Class<?> fieldType){
+        if(fieldType == String.class){
+            return KIND_STRING;
+        }else if(fieldType == int.class){
+            return KIND_INT;
+        }else if(fieldType == long.class){
+            return KIND_LONG;
+        }else if(fieldType == double.class){
+            return KIND_DOUBLE;
+        }else if(fieldType == boolean.class){
+            return KIND_BOOLEAN;
+        }else if(fieldType == Integer.class){
+            return KIND_INTEGER_BOXED;
+        }else if(fieldType == Long.class){
+            return KIND_LONG_BOXED;
+        }else if(fieldType == Double.class){
+            return KIND_DOUBLE_BOXED;
+        }else if(fieldType == BigDecimal.class){
+            return KIND_BIG_DECIMAL;
+        }else if(fieldType == Date.class){
+            return KIND_DATE;
+        }else if(fieldType == LocalDate.class){
+            return KIND_LOCAL_DATE;
+        }else if(fieldType == LocalDateTime.class){
+            return KIND_LOCAL_DATE_TIME;
+        }
+        return KIND_CONVERT;
+    }
+
+    private static boolean isDateKind(byte kind){
+        return KIND_DATE == kind || KIND_LOCAL_DATE == kind || KIND_LOCAL_DATE_TIME == kind;
+    }
+
+    /**
+     * 查找字段类型对应的转换方法，先按简单类名查找，找不到时按去掉点的全类名查找
+     * @param formatConversion 导入格式转换器
+     * @param fieldType 字段类型
+     * @return 转换方法，String类型不需要转换返回null
+     * @throws NoSuchMethodException 找不到对应的转换方法
+     */
+    static Method converter(IFormatConversion formatConversion, Class<?> fieldType) throws NoSuchMethodException{
+        //其余基本类型使用包装类型的转换方法，赋值时拆箱
+        fieldType = org.springframework.util.ClassUtils.resolvePrimitiveIfNecessary(fieldType);
+        String prefix;
+        if(List.class.isAssignableFrom(fieldType)){
+            prefix = "fromStringtoListBy";
+        }else if(Set.class.isAssignableFrom(fieldType)){
+            prefix = "fromStringtoSetBy";
+        }else{
+            prefix = "fromStringto";
+        }
+        String simpleName = prefix + fieldType.getSimpleName();
+        String flexName = prefix + fieldType.getName().replace(".", "");
+        Class<?> conversionClass = formatConversion.getClass();
+        try {
+            return conversionClass.getMethod(simpleName, String.class);
+        }catch (NoSuchMethodException e){
+            log.error("尝试使用" + simpleName + "获取方法失败，正在尝试使用全名获取");
+        }
+        try {
+            return conversionClass.getMethod(flexName, String.class);
+        }catch (NoSuchMethodException e){
+            throw new NoSuchMethodException("尝试使用" + flexName + "获取方法失败，抛出异常，请检查是否存在方法或者方法是否设置为non-private");
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Class<?> getClazz() {
+        return clazz;
+    }
+
+    public List<String> getTitles() {
+        return titles;
+    }
+
+    /**
+     * @return 绑定计划用到的列号，流式解析时只需读取这些列
+     */
+    public BitSet getColumns() {
+        BitSet used = new BitSet();
+        for (int column : columns) {
+            used.set(column);
+        }
+        return used;
+    }
+
+    /**
+     * @return 绑定计划中的字段数
+     */
+    int planSize() {
+        return columns.length;
+    }
+
+    /**
+     * @param i 绑定计划下标
+     * @return 该字段在excel中的列号
+     */
+    int planColumn(int i) {
+        return columns[i];
+    }
+
+    /**
+     * @param i 绑定计划下标
+     * @return 该字段的英文名称
+     */
+    String planKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * @param i 绑定计划下标
+     * @return 该字段在映射中记录的类型，Map模式下为String
+     */
+    Class<?> planType(int i) {
+        return null == accessor ? String.class : accessor.getType(setters[i]);
+    }
+
+    /**
+     * 转换DOM模式下的一行
+     * @param row 行数据
+     * @return 转换结果
+     * @throws NoSuchMethodException 找不到对应的转换方法
+     */
+    public Object bind(Row row) throws NoSuchMethodException{
+        return bind(new RowCells(row));
+    }
+
+    /**
+     * 复制DOM模式下一行中绑定计划用到的单元格，bind复制结果与bind(Row)相同，
+     * 多个线程共用同一个工作簿时在锁内复制，转换在锁外进行
+     * @param row 行数据
+     * @return 行数据，未用到的列为""
+     */
+    List<String> snapshot(Row row){
+        RowCells cells = new RowCells(row);
+        StreamRow copy = new StreamRow(0 == columns.length ? 0 : columns[columns.length - 1] + 1);
+        for (int column : columns) {
+            byte type = cells.type(column);
+            if(CELL_TEXT == type){
+                copy.putText(column, cells.text(column));
+            }else{
+                copy.putNumeric(column, cells.number(column), CELL_DATE == type, cells.text(column));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * 转换流式解析下的一行
+     * @param values 行数据，下标即列号
+     * @return 转换结果
+     * @throws NoSuchMethodException 找不到对应的转换方法
+     */
+    public Object bind(List<String> values) throws NoSuchMethodException{
+        return bind(new ListCells(values));
+    }
+
+    private Object bind(CellSource cells) throws NoSuchMethodException{
+        if(clazz == Map.class){
+            return conversionMap(cells);
+        }
+        return conversionPojo(cells);
+    }
+
+    /**
+     * 内置工具方法，获取当前行的解析结果
+     * @param cells 单元格取值方法
+     * @return 解析结果
+     */
+    private Map<String,String> conversionMap(CellSource cells){
+        Map<String, String> result = new HashMap<>(Math.max(16, columns.length * 4 / 3 + 1));
+        for (int i = 0; i < columns.length; i++) {
+            result.put(keys[i], cells.text(columns[i]));
+        }
+        return result;
+    }
+
+    /**
+     * 内置工具方法，获取当前行的解析Pojo结果
+     * @param cells 单元格取值方法
+     * @return 解析结果
+     * @throws NoSuchMethodException 找不到对应的方法
+     */
+    private Object conversionPojo(CellSource cells) throws NoSuchMethodException{
+        Object obj = accessor.newInstance();
+        for (int i = 0; i < columns.length; i++) {
+            if(KIND_STRING != kinds[i] && KIND_BOOLEAN != kinds[i] && KIND_CONVERT != kinds[i] && bindTyped(obj, i, cells)){
+                continue;
+            }
+            String value = cells.text(columns[i]);
+            if(customConverters[i]){
+                //基本类型的转换结果为null时保持默认值
+                accessor.set(obj, setters[i], convert(converters[i], value));
+                continue;
+            }
+            switch (kinds[i]){
+                case KIND_STRING:
+                    accessor.set(obj, setters[i], value);
+                    break;
+                case KIND_INT:
+                    if(!isBlank(value)){
+                        try {
+                            accessor.setInt(obj, setters[i], Integer.parseInt(value.trim()));
+                        }catch (NumberFormatException e){
+                            log.error("该字符串非数字无法转换：" + value);
+                        }
+                    }
+                    break;
+                case KIND_LONG:
+                    if(!isBlank(value)){
+                        try {
+                            accessor.setLong(obj, setters[i], Long.parseLong(value.trim()));
+                        }catch (NumberFormatException e){
+                            log.error("该字符串非数字无法转换：" + value);
+                        }
+                    }
+                    break;
+                case KIND_DOUBLE:
+                    if(!isBlank(value)){
+                        try {
+                            accessor.setDouble(obj, setters[i], Double.parseDouble(value.trim()));
+                        }catch (NumberFormatException e){
+                            log.error("该字符串非数字无法转换：" + value);
+                        }
+                    }
+                    break;
+                case KIND_BOOLEAN:
+                    if(!isBlank(value)){
+                        accessor.setBoolean(obj, setters[i], Boolean.parseBoolean(value.trim()));
+                    }
+                    break;
+                default:
+                    if(null != dateParsers[i]){
+                        accessor.set(obj, setters[i], parseDate(dateParsers[i], kinds[i], value));
+                        break;
+                    }
+                    accessor.set(obj, setters[i], convert(converters[i], value));
+                    break;
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * 数字或日期单元格直接赋值，单元格类型与字段不匹配或转换方法被重写时返回false，交给字符串转换处理
+     * @param obj 对象
+     * @param i 绑定计划下标
+     * @param cells 单元格取值方法
+     * @return 是否已经赋值
+     */
+    private boolean bindTyped(Object obj, int i, CellSource cells){
+        if(customConverters[i]){
+            return false;
+        }
+        int column = columns[i];
+        byte type = cells.type(column);
+        if(CELL_TEXT == type){
+            return false;
+        }
+        double d = cells.number(column);
+        if(CELL_DATE == type){
+            switch (kinds[i]){
+                case KIND_DATE:
+                    accessor.set(obj, setters[i], DateUtil.getJavaDate(d));
+                    return true;
+                case KIND_LOCAL_DATE:
+                    accessor.set(obj, setters[i], toLocalDateTime(d).toLocalDate());
+                    return true;
+                case KIND_LOCAL_DATE_TIME:
+                    accessor.set(obj, setters[i], toLocalDateTime(d));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        switch (kinds[i]){
+            case KIND_INT:
+                if(d != (int) d){
+                    return false;
+                }
+                accessor.setInt(obj, setters[i], (int) d);
+                return true;
+            case KIND_LONG:
+                if(d != (long) d){
+                    return false;
+                }
+                accessor.setLong(obj, setters[i], (long) d);
+                return true;
+            case KIND_DOUBLE:
+                accessor.setDouble(obj, setters[i], d);
+                return true;
+            case KIND_INTEGER_BOXED:
+                if(d != (int) d){
+                    return false;
+                }
+                accessor.set(obj, setters[i], (int) d);
+                return true;
+            case KIND_LONG_BOXED:
+                if(d != (long) d){
+                    return false;
+                }
+                accessor.set(obj, setters[i], (long) d);
+                return true;
+            case KIND_DOUBLE_BOXED:
+                accessor.set(obj, setters[i], d);
+                return true;
+            case KIND_BIG_DECIMAL:
+                accessor.set(obj, setters[i], BigDecimal.valueOf(d));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 日期字段使用默认转换方法时创建该列的解析器，由调用方在页结束后汇总解析失败数
+     * @param fieldType 字段类型
+     * @param converter 字段的转换方法
+     * @return 解析器，不是日期字段或转换方法被重写时为null
+     */
+    static DateParser dateParser(Class<?> fieldType, Method converter){
+        return isDateKind(kind(fieldType)) && null != converter && converter.getDeclaringClass() == IFormatConversion.class
+                ? new DateParser() : null;
+    }
+
+    /**
+     * 使用列的解析器转换日期，结果与IFormatConversion中默认的转换方法一致
+     * @param dateParser 列的解析器
+     * @param fieldType 字段类型，Date、LocalDate或LocalDateTime
+     * @param value 单元格的值
+     * @return 转换结果
+     */
+    static Object parseDate(DateParser dateParser, Class<?> fieldType, String value){
+        return parseDate(dateParser, kind(fieldType), value);
+    }
+
+    private static Object parseDate(DateParser dateParser, byte kind, String value){
+        if(isBlank(value)){
+            return null;
+        }
+        LocalDateTime dateTime = dateParser.parseLocalDateTime(value);
+        switch (kind){
+            case KIND_DATE:
+                return null == dateTime ? new Date(0L) : Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+            case KIND_LOCAL_DATE:
+                return null == dateTime ? null : dateTime.toLocalDate();
+            default:
+                return dateTime;
+        }
+    }
+
+    /**
+     * 输出日期列解析失败的汇总，页解析完成后调用
+     */
+    public void report(){
+        for (int i = 0; i < dateParsers.length; i++) {
+            if(null != dateParsers[i] && dateParsers[i].getFailed() > 0){
+                log.warn("标题" + titles.get(columns[i]) + "列共有" + dateParsers[i].getFailed() + "条数据无法识别为日期，例如："
+                        + dateParsers[i].getFirstFailure());
+            }
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(double d){
+        return LocalDateTime.ofInstant(DateUtil.getJavaDate(d).toInstant(), ZoneId.systemDefault());
+    }
+
+    private static boolean isBlank(String value){
+        return null == value || value.trim().isEmpty();
+    }
+
+    private Object convert(Method converter, String value){
+        try {
+            return converter.invoke(formatConversion, value);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 单元格取值方式，DOM与流式解析各自实现
+     */
+    private interface CellSource {
+
+        /**
+         * @param column 列号
+         * @return 单元格的字符串值，与MsUtils.getStringValueFromCell一致
+         */
+        String text(int column);
+
+        /**
+         * @param column 列号
+         * @return 单元格类型，见CELL_*
+         */
+        byte type(int column);
+
+        /**
+         * @param column 列号
+         * @return 数字或日期单元格的原始数值
+         */
+        double number(int column);
+    }
+
+    private static final class RowCells implements CellSource {
+
+        private final Row row;
+
+        private RowCells(Row row) {
+            this.row = row;
+        }
+
+        @Override
+        public String text(int column) {
+            return MsUtils.getStringValueFromCell(row.getCell(column));
+        }
+
+        @Override
+        public byte type(int column) {
+            Cell cell = row.getCell(column);
+            if(null == cell || Cell.CELL_TYPE_NUMERIC != cell.getCellType()){
+                return CELL_TEXT;
+            }
+            return HSSFDateUtil.isCellDateFormatted(cell) ? CELL_DATE : CELL_NUMERIC;
+        }
+
+        @Override
+        public double number(int column) {
+            return row.getCell(column).getNumericCellValue();
+        }
+    }
+
+    private static final class ListCells implements CellSource {
+
+        private final List<String> values;
+
+        private final StreamRow row;
+
+        private ListCells(List<String> values) {
+            this.values = values;
+            this.row = values instanceof StreamRow ? (StreamRow) values : null;
+        }
+
+        @Override
+        public String text(int column) {
+            return column < values.size() && null != values.get(column) ? values.get(column) : "";
+        }
+
+        @Override
+        public byte type(int column) {
+            if(null == row){
+                return CELL_TEXT;
+            }
+            return row.isDate(column) ? CELL_DATE : row.isNumeric(column) ? CELL_NUMERIC : CELL_TEXT;
+        }
+
+        @Override
+        public double number(int column) {
+            return row.getNumber(column);
+        }
+    }
+}
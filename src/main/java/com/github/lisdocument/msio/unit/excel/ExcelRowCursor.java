@@ -0,0 +1,249 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.unit.func.RowHandler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流式导入的游标，按需逐批取出转换后的行，适合分窗口处理大文件或只预览前若干行
+ * 读取线程解析并转换，转换结果放入有界队列，队列满时读取线程阻塞，调用线程通过next取出，
+ * 内存中最多积压capacity行；close后读取线程在当前行结束后停止，不再解析文件的剩余部分
+ * 游标不是线程安全的，需要在同一个线程中使用，使用完毕后必须close
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class ExcelRowCursor<T> implements Closeable {
+
+    /**
+     * 读取结束的标识
+     */
+    private static final Object END = new Object();
+
+    private final SheetRowDispatcher dispatcher;
+
+    private final BlockingQueue<Object> queue;
+
+    private final Thread readThread;
+
+    private volatile Throwable readError;
+
+    private volatile boolean closed;
+
+    /**
+     * hasNext预先取出的一项
+     */
+    private Object peeked;
+
+    /**
+     * 已经取出读取结束的标识
+     */
+    private boolean finished;
+
+    /**
+     * 已经取出的行数
+     */
+    private long position;
+
+    /**
+     * @param dispatcherFactory 根据游标的RowHandler创建行分发
+     * @param capacity 队列中最多积压的行数
+     * @param reader 读取方法，以行分发作为行监听器
+     * @param onFinish 读取线程结束时执行，用于输出汇总及释放资源
+     */
+    ExcelRowCursor(Function<RowHandler<Object>, SheetRowDispatcher> dispatcherFactory, int capacity,
+                   Consumer<IExcelRowListener> reader, Runnable onFinish) {
+        this.dispatcher = dispatcherFactory.apply((sheetIndex, rowNum, bean) -> offer(bean));
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.readThread = new Thread(() -> {
+            try {
+                reader.accept(dispatcher);
+            }catch (Throwable e){
+                if(!closed){
+                    readError = e;
+                }
+            }finally {
+                try {
+                    onFinish.run();
+                }finally {
+                    putQuietly(END);
+                }
+            }
+        }, "流式导入游标读取线程");
+        readThread.setDaemon(true);
+    }
+
+    /**
+     * 读取线程调用，将转换后的行放入队列
+     * @param bean 转换结果
+     */
+    private void offer(Object bean){
+        if(closed){
+            throw new IllegalStateException("游标已关闭");
+        }
+        try {
+            queue.put(bean);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("游标已关闭", e);
+        }
+    }
+
+    void start(){
+        readThread.start();
+    }
+
+    /**
+     * 取出之后的至多size行，没有更多的行时阻塞等待读取
+     * @param size 最多取出的行数
+     * @return 转换后的行，为空时已经读取完毕
+     * @throws IllegalStateException 游标已关闭，或读取线程发生异常（异常之前的行已经全部取出）
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> next(int size){
+        if(size <= 0){
+            throw new IllegalArgumentException("size必须大于0");
+        }
+        if(closed){
+            throw new IllegalStateException("游标已关闭");
+        }
+        if(finished){
+            rethrow();
+            return Collections.emptyList();
+        }
+        List<T> rows = new ArrayList<>(Math.min(size, 1024));
+        while (rows.size() < size){
+            Object next = poll();
+            if(END == next){
+                finished = true;
+                break;
+            }
+            rows.add((T) next);
+        }
+        position += rows.size();
+        if(rows.isEmpty()){
+            rethrow();
+        }
+        return rows;
+    }
+
+    /**
+     * 是否还有未取出的行，需要时阻塞等待读取
+     * @return 还有行为true
+     */
+    public boolean hasNext(){
+        if(closed){
+            return false;
+        }
+        if(finished){
+            rethrow();
+            return false;
+        }
+        if(null == peeked){
+            peeked = take();
+        }
+        if(END == peeked){
+            peeked = null;
+            finished = true;
+            rethrow();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 已经取出的行数
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return 读取到的总页数，读取尚未结束时为目前读到的页数
+     */
+    public int getSheetSize() {
+        return dispatcher.getSheetSize();
+    }
+
+    /**
+     * 停止读取并丢弃尚未取出的行，等待读取线程结束
+     */
+    @Override
+    public void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        dispatcher.stop();
+        readThread.interrupt();
+        if(!finished && END != peeked){
+            //读取线程可能阻塞在put上，清空队列直到结束标识
+            Object next;
+            do {
+                next = take();
+            }while (END != next);
+            finished = true;
+        }
+        peeked = null;
+        queue.clear();
+        try {
+            readThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object poll(){
+        if(null != peeked){
+            Object next = peeked;
+            peeked = null;
+            return next;
+        }
+        return take();
+    }
+
+    private Object take(){
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待读取时被中断", e);
+        }
+    }
+
+    private void rethrow(){
+        Throwable error = readError;
+        readError = null;
+        if(error instanceof RuntimeException){
+            throw (RuntimeException) error;
+        }
+        if(error instanceof Error){
+            throw (Error) error;
+        }
+        if(null != error){
+            throw new IllegalStateException(error);
+        }
+    }
+
+    private void putQuietly(Object item){
+        boolean interrupted = false;
+        while (true){
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
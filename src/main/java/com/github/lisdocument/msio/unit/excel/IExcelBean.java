@@ -23,4 +23,11 @@ public interface IExcelBean {
      * @return 便于遍历
      */
     int getDataSize();
+
+    /**
+     * 释放该页已转换的数据，延迟解析的实现再次获取时会重新解析
+     * @param pageNo 页码
+     */
+    default void release(Integer pageNo){
+    }
 }
@@ -0,0 +1,60 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 流式解析的行监听器，解析器每读完一行调用一次，不持有整个工作簿
+ * @author Libin
+ * @version 1.0.2
+ */
+public interface IExcelRowListener {
+
+    /**
+     * 开始解析某一页
+     * @param sheetIndex 页码，从0开始
+     * @param sheetName 页名称
+     * @return 是否需要解析该页，false会跳过整页
+     */
+    boolean startSheet(int sheetIndex, String sheetName);
+
+    /**
+     * 读取到一行非空数据
+     * @param sheetIndex 页码
+     * @param rowNum 行号，从0开始
+     * @param values 行数据，下标即列号，空单元格为""
+     */
+    void row(int sheetIndex, int rowNum, List<String> values);
+
+    /**
+     * 当前页需要读取的列，解析器在每行开始时获取，未包含的列不查找共享字符串、不做格式转换，在行数据中为""
+     * @param sheetIndex 页码
+     * @return 需要读取的列号，为null时读取全部列
+     */
+    default BitSet columns(int sheetIndex){
+        return null;
+    }
+
+    /**
+     * 当前页是否已经不需要更多的行，解析器每推送一行检查一次，为true时不再解析该页的剩余部分，直接结束该页
+     * @param sheetIndex 页码
+     * @return 不需要更多的行为true
+     */
+    default boolean isSheetDone(int sheetIndex){
+        return false;
+    }
+
+    /**
+     * 是否已经不需要更多的页，解析器在每页结束后检查，为true时停止读取整个工作簿
+     * @return 不需要更多的页为true
+     */
+    default boolean isDone(){
+        return false;
+    }
+
+    /**
+     * 某一页解析结束
+     * @param sheetIndex 页码
+     */
+    void endSheet(int sheetIndex);
+}
@@ -1,6 +1,7 @@
 package com.github.lisdocument.msio.unit.excel;
 
 import com.github.lisdocument.msio.utils.ClassUtils;
+import com.github.lisdocument.msio.utils.MergedRegionIndex;
 import com.github.lisdocument.msio.utils.MsUtils;
 import com.github.lisdocument.msio.utils.StringRegexUtils;
 import org.apache.poi.ss.usermodel.Cell;
@@ -50,8 +51,10 @@ public class ModelExcelBean  implements IExcelBeanReverse{
         for (int i = 0; i < data.size(); i++) {
             Object dataItem = data.get(i);
             Sheet sheet = workbook.getSheetAt(i);
+            //模板中的合并单元格只有左上角显示，被覆盖的单元格不填充
+            MergedRegionIndex regions = MergedRegionIndex.of(sheet);
             int lastRowNum = sheet.getLastRowNum();
-            for (int rowNum = 0; rowNum < lastRowNum; rowNum++) {
+            for (int rowNum = 0; rowNum <= lastRowNum; rowNum++) {
                 Row row = sheet.getRow(rowNum);
                 if(null == row){
                     continue;
@@ -59,13 +62,12 @@ public class ModelExcelBean  implements IExcelBeanReverse{
                 int lastCellNum = row.getLastCellNum() + 0;
                 for (int cellNum = 0; cellNum < lastCellNum; cellNum++) {
                     Cell cell = row.getCell(cellNum);
-                    if(null == cell){
+                    if(null == cell || regions.isHidden(rowNum, cellNum)){
                         continue;
                     }
                     String cellValue = MsUtils.getStringValueFromCell(cell);
-                    if(cellValue.startsWith("${")){
-                        String key = cellValue.substring(1);
-                        key = key.substring(key.length() - 2);
+                    if(cellValue.startsWith("${") && cellValue.endsWith("}")){
+                        String key = cellValue.substring(2, cellValue.length() - 1);
                         Object value = dataItem;
                         if(dataItem instanceof Map){
                             for (String s : key.split("\\.")) {
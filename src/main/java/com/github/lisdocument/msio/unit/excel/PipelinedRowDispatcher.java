@@ -0,0 +1,255 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.unit.func.RowHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流水线方式的逐行转换：读取线程解析单元格并按批提交给转换线程池，
+ * 调用线程按提交顺序取出转换结果交给RowHandler，行的交付顺序与excel中一致，
+ * 读取与交付之间为有界队列，交付跟不上时读取线程阻塞，内存中最多积压queueCapacity批数据
+ * @author Libin
+ * @version 1.0.2
+ */
+final class PipelinedRowDispatcher extends SheetRowDispatcher {
+
+    /**
+     * 读取结束的标识
+     */
+    private static final Batch END = new Batch(-1, null, 0);
+
+    private final Executor executor;
+
+    private final int batchSize;
+
+    private final BlockingQueue<Batch> queue;
+
+    /**
+     * 读取线程中正在积累的批
+     */
+    private Batch batch;
+
+    /**
+     * 交付出错后通知读取线程终止
+     */
+    private volatile boolean aborted;
+
+    private volatile Throwable readError;
+
+    PipelinedRowDispatcher(MsIoContainer msIoContainer, IFormatConversion formatConversion, ExcelImportOption option,
+                           RowHandler<?> handler) {
+        super(msIoContainer, formatConversion, option.getId(), option.getPageNo(),
+                null == option.getIds() || option.getIds().isEmpty() ? null : option.getIds(), option.isChangeClass(), handler);
+        this.executor = option.getExecutor();
+        this.batchSize = option.getBatchSize();
+        this.queue = new ArrayBlockingQueue<>(option.getQueueCapacity());
+    }
+
+    /**
+     * 启动读取线程并在当前线程中按顺序交付，直到读取完毕
+     * @param reader 读取方法，以当前对象作为行监听器
+     */
+    void run(Consumer<IExcelRowListener> reader){
+        Thread readThread = new Thread(() -> {
+            try {
+                reader.accept(this);
+            }catch (Throwable e){
+                if(!aborted){
+                    readError = e;
+                }
+            }finally {
+                putQuietly(END);
+            }
+        }, "流式导入读取线程");
+        readThread.setDaemon(true);
+        readThread.start();
+        try {
+            consume();
+        }catch (RuntimeException | Error e){
+            aborted = true;
+            readThread.interrupt();
+            drain();
+            throw e;
+        }
+        Throwable error = readError;
+        if(error instanceof RuntimeException){
+            throw (RuntimeException) error;
+        }
+        if(error instanceof Error){
+            throw (Error) error;
+        }
+        if(null != error){
+            throw new IllegalStateException(error);
+        }
+    }
+
+    @Override
+    void accept(int sheetIndex, int rowNum, ExcelRowBinder binder, List<String> values) {
+        if(null != batch && (batch.binder != binder || batch.size() >= batchSize)){
+            flush();
+        }
+        if(null == batch){
+            batch = new Batch(sheetIndex, binder, batchSize);
+        }
+        batch.add(rowNum, values);
+    }
+
+    @Override
+    public void endSheet(int sheetIndex) {
+        super.endSheet(sheetIndex);
+        flush();
+    }
+
+    /**
+     * 将当前批提交给转换线程池，并按顺序放入交付队列
+     */
+    private void flush(){
+        if(null == batch){
+            return;
+        }
+        Batch submitted = batch;
+        batch = null;
+        submitted.result = CompletableFuture.supplyAsync(submitted::convert, executor);
+        try {
+            queue.put(submitted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("流式导入已被终止", e);
+        }
+        if(aborted){
+            throw new IllegalStateException("流式导入已被终止");
+        }
+    }
+
+    @Override
+    void report(ExcelRowBinder binder) {
+        //读取线程结束一页时该页的行可能仍在转换，汇总在交付线程中输出
+    }
+
+    private void consume(){
+        ExcelRowBinder last = null;
+        while (true){
+            Batch next = take();
+            if(null != last && (END == next || last != next.binder)){
+                last.report();
+            }
+            if(END == next){
+                return;
+            }
+            last = next.binder;
+            Converted converted = next.result.join();
+            for (int i = 0; i < converted.count && !isFailed(next.sheetIndex); i++) {
+                deliver(next.sheetIndex, next.rowNums[i], converted.beans[i]);
+            }
+            if(null != converted.error && !isFailed(next.sheetIndex)){
+                fail(next.sheetIndex, converted.error);
+            }
+        }
+    }
+
+    /**
+     * 交付出错后清空队列，保证读取线程不会阻塞在put上
+     */
+    private void drain(){
+        Batch next;
+        do {
+            next = take();
+        }while (END != next);
+    }
+
+    private Batch take(){
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("流式导入已被终止", e);
+        }
+    }
+
+    private void putQuietly(Batch item){
+        boolean interrupted = false;
+        while (true){
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 同一页中连续的若干行
+     */
+    private static final class Batch {
+
+        private final int sheetIndex;
+
+        private final ExcelRowBinder binder;
+
+        private final int[] rowNums;
+
+        private final List<List<String>> rows;
+
+        private CompletableFuture<Converted> result;
+
+        private Batch(int sheetIndex, ExcelRowBinder binder, int capacity) {
+            this.sheetIndex = sheetIndex;
+            this.binder = binder;
+            this.rowNums = new int[capacity];
+            this.rows = new ArrayList<>(capacity);
+        }
+
+        private int size(){
+            return rows.size();
+        }
+
+        private void add(int rowNum, List<String> values){
+            rowNums[rows.size()] = rowNum;
+            rows.add(values);
+        }
+
+        /**
+         * 在转换线程中执行，遇到转换异常时停止，之前的行仍然交付，与单线程模式一致
+         * @return 转换结果
+         */
+        private Converted convert(){
+            Object[] beans = new Object[rows.size()];
+            for (int i = 0; i < beans.length; i++) {
+                try {
+                    beans[i] = binder.bind(rows.get(i));
+                }catch (NoSuchMethodException | RuntimeException e){
+                    return new Converted(beans, i, e);
+                }
+            }
+            return new Converted(beans, beans.length, null);
+        }
+    }
+
+    private static final class Converted {
+
+        private final Object[] beans;
+
+        private final int count;
+
+        private final Exception error;
+
+        private Converted(Object[] beans, int count, Exception error) {
+            this.beans = beans;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
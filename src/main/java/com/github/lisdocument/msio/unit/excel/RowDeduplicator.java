@@ -0,0 +1,224 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.utils.SpillableLongSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流式导入的重复行过滤，在转换之前根据去重列的原始字符串计算64位指纹，指纹已出现过的行直接丢弃，保留第一次出现的行
+ * 指纹存放在SpillableLongSet中，每行只占用一个long，超过内存上限后溢出到磁盘，适合数百万行以上的一次性去重
+ * 指纹为FNV-1a逐字符散列后再经过一次64位混淆，每列之后混入长度作为分隔，空单元格与空字符串相同，
+ * 不同的行指纹相同的概率约为 行数^2 / 2^65，一千万行约为百万分之三
+ * 去重字段为映射中的英文名称（无映射时为标题），与投影一致，每页的绑定计划通过bind重新确定去重列，
+ * 指纹集合按映射区分，同一映射的各页共用一个集合，不同映射的页互不影响，缺少去重字段的页不去重
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class RowDeduplicator implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RowDeduplicator.class);
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    /**
+     * 去重字段，为空时整行去重
+     */
+    private final List<String> keys;
+
+    private final long memoryBytes;
+
+    /**
+     * 每个映射的指纹集合，键为映射id，未匹配到映射时为空字符串
+     */
+    private final Map<String, SpillableLongSet> fingerprints = new LinkedHashMap<>();
+
+    /**
+     * 当前页使用的指纹集合，为null时当前页不去重
+     */
+    private SpillableLongSet current;
+
+    /**
+     * 当前页去重列的列号，为null时整行去重
+     */
+    private int[] columns;
+
+    private long dropped;
+
+    private RowDeduplicator(List<String> keys, long memoryBytes) {
+        this.keys = keys;
+        this.memoryBytes = memoryBytes;
+    }
+
+    /**
+     * 创建重复行过滤
+     * @param keys 去重字段（映射中的英文名称，无映射时为标题），为null时不去重，为空时整行去重
+     * @param memoryBytes 每个映射的指纹在内存中的上限（字节），小于等于0时不溢出到磁盘
+     * @return 重复行过滤，不去重时为null
+     */
+    public static RowDeduplicator of(List<String> keys, long memoryBytes){
+        return null == keys ? null : new RowDeduplicator(keys, memoryBytes);
+    }
+
+    /**
+     * @return 去重字段，为空时整行去重
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * 根据当前页的绑定计划确定去重列，并切换到该页映射的指纹集合
+     * @param binder 当前页的绑定器，其绑定计划须包含去重字段（投影之外的去重字段需另外生成计划）
+     * @return 当前页去重为true，绑定计划中缺少去重字段时该页不去重为false
+     */
+    public synchronized boolean bind(ExcelRowBinder binder){
+        int[] bound = null;
+        if(!keys.isEmpty()){
+            bound = new int[keys.size()];
+            for (int i = 0; i < bound.length; i++) {
+                String key = keys.get(i).trim();
+                bound[i] = -1;
+                for (int j = 0; j < binder.planSize(); j++) {
+                    if(key.equals(binder.planKey(j))){
+                        bound[i] = binder.planColumn(j);
+                        break;
+                    }
+                }
+                if(bound[i] < 0){
+                    log.warn("映射" + binder.getId() + "的标题中没有去重字段" + key + "，该页不去重");
+                    columns = null;
+                    current = null;
+                    return false;
+                }
+            }
+        }
+        columns = bound;
+        current = fingerprints.computeIfAbsent(null == binder.getId() ? "" : binder.getId(), k -> new SpillableLongSet(memoryBytes));
+        return true;
+    }
+
+    /**
+     * 将当前页的去重列加入需要读取的列，整行去重及不去重的页不改变
+     * @param used 需要读取的列
+     */
+    public void project(BitSet used){
+        if(null != columns){
+            for (int column : columns) {
+                used.set(column);
+            }
+        }
+    }
+
+    /**
+     * 计算一行的指纹，只读取去重列，可以在多个线程中同时调用
+     * @param values 行数据，下标即列号
+     * @return 指纹
+     */
+    public long fingerprint(List<String> values){
+        long hash = OFFSET_BASIS;
+        int[] keyColumns = columns;
+        if(null == keyColumns){
+            //末尾的空单元格不影响整行的指纹
+            int last = values.size() - 1;
+            while (last >= 0 && isEmpty(values.get(last))){
+                last --;
+            }
+            for (int column = 0; column <= last; column++) {
+                hash = hash(hash, values.get(column));
+            }
+        }else{
+            for (int column : keyColumns) {
+                hash = hash(hash, column < values.size() ? values.get(column) : null);
+            }
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 加入一行
+     * @param values 行数据
+     * @return 未重复的行及不去重的页为true，重复的行为false
+     */
+    public boolean add(List<String> values){
+        return add(fingerprint(values));
+    }
+
+    /**
+     * 将一行的指纹加入当前页映射的指纹集合
+     * @param fingerprint 指纹
+     * @return 未重复的行及不去重的页为true，重复的行为false
+     */
+    public synchronized boolean add(long fingerprint){
+        if(null == current || current.add(fingerprint)){
+            return true;
+        }
+        dropped ++;
+        return false;
+    }
+
+    /**
+     * @return 丢弃的重复行数
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * 输出去重结果的汇总
+     */
+    public synchronized void report(){
+        if(dropped > 0){
+            long kept = 0;
+            int runs = 0;
+            for (SpillableLongSet set : fingerprints.values()) {
+                kept += set.size();
+                runs += set.getRunCount();
+            }
+            log.info("去重共丢弃" + dropped + "行重复数据，保留" + kept + "行" + (runs > 0 ? "，指纹溢出到磁盘" + runs + "段" : ""));
+        }
+    }
+
+    /**
+     * 删除溢出的临时文件
+     */
+    @Override
+    public synchronized void close(){
+        fingerprints.values().forEach(SpillableLongSet::close);
+        fingerprints.clear();
+        current = null;
+    }
+
+    private static boolean isEmpty(String value){
+        return null == value || value.isEmpty();
+    }
+
+    private static long hash(long hash, String value){
+        int length = null == value ? 0 : value.length();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ value.charAt(i)) * PRIME;
+        }
+        //长度作为列的分隔，避免"ab","c"与"a","bc"相同
+        return (hash ^ length) * PRIME;
+    }
+
+    /**
+     * 64位混淆（MurmurHash3的fmix64），使低位也分布均匀，LongHashSet直接以低位作为槽位
+     */
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
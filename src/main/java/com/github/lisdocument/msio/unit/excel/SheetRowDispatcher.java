@@ -0,0 +1,340 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.unit.func.RowHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流式解析的逐行转换，每页的标题行匹配映射后创建绑定器，之后每行转换后直接交给RowHandler，自身不保留数据
+ * 标题行为每页第一个非空行，若该行仅有一个单元格且下一行有多个单元格，则视为标题（合并的大标题）跳过
+ * @author Libin
+ * @version 1.0.2
+ */
+class SheetRowDispatcher implements IExcelRowListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SheetRowDispatcher.class);
+
+    private final MsIoContainer msIoContainer;
+
+    private final IFormatConversion formatConversion;
+
+    private final RowHandler<Object> handler;
+
+    /**
+     * 单页模式指定的映射id
+     */
+    private final String id;
+
+    /**
+     * 单页模式的页码，为null时解析全部页
+     */
+    private final Integer pageIndex;
+
+    /**
+     * 每页的映射id池
+     */
+    private final List<String> idPool;
+
+    /**
+     * 是否根据标题自动匹配映射
+     */
+    private final boolean isChangeClass;
+
+    /**
+     * 转换失败的页
+     */
+    private final BitSet failedSheets = new BitSet();
+
+    /**
+     * 读取到的总页数
+     */
+    private int sheetSize;
+
+    /**
+     * 当前页使用的映射id，autoMatch为true时忽略
+     */
+    private String sheetId;
+
+    private boolean autoMatch;
+
+    private ExcelRowBinder binder;
+
+    /**
+     * 暂存的单单元格首行，可能为大标题也可能为单列的标题行
+     */
+    private List<String> pending;
+
+    /**
+     * 重复行过滤，为null时不去重
+     */
+    private RowDeduplicator distinct;
+
+    /**
+     * 列投影，为null时读取全部列
+     */
+    private List<String> projection;
+
+    /**
+     * 当前页需要读取的列，标题行绑定之前为null
+     */
+    private BitSet columns;
+
+    /**
+     * 每页导入的数据行范围[rowFrom, rowTo)
+     */
+    private int rowFrom;
+
+    private int rowTo = Integer.MAX_VALUE;
+
+    /**
+     * 当前页已读取的数据行数
+     */
+    private int dataRows;
+
+    /**
+     * 外部要求停止读取
+     */
+    private volatile boolean stopped;
+
+    /**
+     * @param msIoContainer 映射容器
+     * @param formatConversion 格式转换
+     * @param id 单页模式指定的映射id，为空则自行查询
+     * @param pageIndex 单页模式的页码，为null时解析全部页
+     * @param idPool 每页的映射id池，为null时每页均自动匹配
+     * @param isChangeClass id池中未指定的页是否自动匹配，为false则省略该页
+     * @param handler 逐行处理程序
+     */
+    @SuppressWarnings("unchecked")
+    SheetRowDispatcher(MsIoContainer msIoContainer, IFormatConversion formatConversion, String id, Integer pageIndex,
+                       List<String> idPool, boolean isChangeClass, RowHandler<?> handler) {
+        this.msIoContainer = msIoContainer;
+        this.formatConversion = formatConversion;
+        this.id = StringUtils.isEmpty(id) ? null : id;
+        this.pageIndex = pageIndex;
+        this.idPool = idPool;
+        this.isChangeClass = isChangeClass;
+        this.handler = (RowHandler<Object>) handler;
+    }
+
+    /**
+     * 设置重复行过滤，重复行在转换之前丢弃
+     * @param distinct 重复行过滤，为null时不去重
+     */
+    void setDistinct(RowDeduplicator distinct) {
+        this.distinct = distinct;
+    }
+
+    /**
+     * 设置列投影，标题行之后的行只读取投影字段所在的列
+     * @param projection 需要绑定的字段，为null时读取全部列，为空时只读取有映射的列
+     */
+    void setProjection(List<String> projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * 设置每页导入的数据行范围，读到rowTo之后该页剩余的行不再解析
+     * @param rowFrom 起始数据行（含），从0开始
+     * @param rowTo 结束数据行（不含）
+     */
+    void setRowRange(int rowFrom, int rowTo) {
+        this.rowFrom = rowFrom;
+        this.rowTo = rowTo;
+    }
+
+    /**
+     * 要求解析器尽快停止，之后的行不再处理，可以在其他线程中调用
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return 读取到的总页数
+     */
+    int getSheetSize() {
+        return sheetSize;
+    }
+
+    /**
+     * 该页是否转换失败，失败页在异常之前的行已经交给了RowHandler
+     * @param sheetIndex 页码
+     * @return 失败为true
+     */
+    synchronized boolean isFailed(int sheetIndex) {
+        return failedSheets.get(sheetIndex);
+    }
+
+    /**
+     * 标记该页转换失败，该页之后的行不再处理
+     * @param sheetIndex 页码
+     * @param e 异常
+     */
+    synchronized void fail(int sheetIndex, Exception e) {
+        log.error("迭代时发生异常，异常页" + sheetIndex);
+        e.printStackTrace();
+        failedSheets.set(sheetIndex);
+    }
+
+    /**
+     * 将转换后的对象交给RowHandler
+     * @param sheetIndex 页码
+     * @param rowNum 行号
+     * @param bean 转换结果
+     */
+    void deliver(int sheetIndex, int rowNum, Object bean) {
+        handler.handle(sheetIndex, rowNum, bean);
+    }
+
+    /**
+     * 标题行之后的数据行的转换，默认在当前线程中转换并交付
+     * @param sheetIndex 页码
+     * @param rowNum 行号
+     * @param binder 当前页的绑定器
+     * @param values 行数据
+     */
+    void accept(int sheetIndex, int rowNum, ExcelRowBinder binder, List<String> values) {
+        Object bean;
+        try {
+            bean = binder.bind(values);
+        }catch (NoSuchMethodException | RuntimeException e){
+            fail(sheetIndex, e);
+            return;
+        }
+        deliver(sheetIndex, rowNum, bean);
+    }
+
+    @Override
+    public boolean startSheet(int sheetIndex, String sheetName) {
+        sheetSize = sheetIndex + 1;
+        binder = null;
+        pending = null;
+        columns = null;
+        dataRows = 0;
+        if(null != pageIndex){
+            sheetId = id;
+            autoMatch = null == id;
+            return pageIndex == sheetIndex;
+        }
+        if(null == idPool){
+            sheetId = null;
+            autoMatch = true;
+            return true;
+        }
+        sheetId = sheetIndex < idPool.size() ? idPool.get(sheetIndex) : null;
+        if(StringUtils.isEmpty(sheetId)){
+            //未指定映射的页，若不允许自动匹配则省略
+            sheetId = null;
+            autoMatch = true;
+            return isChangeClass;
+        }
+        autoMatch = false;
+        return true;
+    }
+
+    @Override
+    public void row(int sheetIndex, int rowNum, List<String> values) {
+        if(isFailed(sheetIndex)){
+            return;
+        }
+        if(null == binder){
+            try {
+                List<String> titles = titles(values);
+                long count = titles.stream().filter(t -> null != t).count();
+                if(null == pending && count == 1){
+                    pending = titles;
+                    return;
+                }
+                if(null == pending || count != 1){
+                    bindTitles(titles);
+                    return;
+                }
+                //单列的页，暂存行即为标题行
+                bindTitles(pending);
+            }catch (NoSuchMethodException | RuntimeException e){
+                fail(sheetIndex, e);
+                return;
+            }
+        }
+        int dataRow = dataRows ++;
+        if(dataRow < rowFrom || dataRow >= rowTo){
+            return;
+        }
+        if(null != distinct && !distinct.add(values)){
+            return;
+        }
+        accept(sheetIndex, rowNum, binder, values);
+    }
+
+    @Override
+    public BitSet columns(int sheetIndex) {
+        return columns;
+    }
+
+    @Override
+    public boolean isSheetDone(int sheetIndex) {
+        return stopped || dataRows >= rowTo || isFailed(sheetIndex);
+    }
+
+    @Override
+    public boolean isDone() {
+        //指定行范围的单页模式，该页读完后不再需要之后的页
+        return stopped || (null != pageIndex && Integer.MAX_VALUE != rowTo && sheetSize > pageIndex);
+    }
+
+    @Override
+    public void endSheet(int sheetIndex) {
+        if(null != binder){
+            report(binder);
+        }
+        //仅有标题行的页没有数据，无需再匹配映射
+        binder = null;
+        pending = null;
+    }
+
+    /**
+     * 页中所有行转换完成后输出转换问题的汇总
+     * @param binder 当前页的绑定器
+     */
+    void report(ExcelRowBinder binder){
+        binder.report();
+    }
+
+    private void bindTitles(List<String> titles) throws NoSuchMethodException{
+        binder = ExcelRowBinder.build(msIoContainer, formatConversion, sheetId, autoMatch, titles, projection);
+        if(null != distinct){
+            //投影之外的去重字段不在绑定计划中，按去重字段另外生成计划确定其列号
+            distinct.bind(null == projection || distinct.getKeys().isEmpty() ? binder
+                    : ExcelRowBinder.build(msIoContainer, formatConversion, binder.getId(), false, titles, distinct.getKeys()));
+        }
+        if(null != projection){
+            columns = binder.getColumns();
+            if(null != distinct){
+                distinct.project(columns);
+            }
+        }
+        pending = null;
+    }
+
+    /**
+     * 转换为标题行，空单元格为null，与MsUtils.getRowDataInString一致
+     * @param values 行数据
+     * @return 标题
+     */
+    private List<String> titles(List<String> values){
+        List<String> titles = new ArrayList<>(values.size());
+        for (String value : values) {
+            titles.add(StringUtils.isEmpty(value) || "".equals(value.trim()) ? null : value);
+        }
+        return titles;
+    }
+}
@@ -9,10 +9,8 @@ package com.github.lisdocument.msio.unit.excel;
  * To change this template use File | Settings | File Templates.
  */
 
-import com.github.lisdocument.msio.config.MsIoContainer;
 import com.github.lisdocument.msio.exception.IndexOutOfSheetSizeException;
 import com.github.lisdocument.msio.exception.UnsupportFormatException;
-import com.github.lisdocument.msio.utils.ClassUtils;
 import com.github.lisdocument.msio.utils.MsUtils;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -24,7 +22,12 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.constraints.NotNull;
 import java.io.File;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created with IntelliJ IDEA.
@@ -37,6 +40,11 @@ public final class SimpleExcelBean extends BaseExcelBean {
 
     private static final Logger log = LoggerFactory.getLogger(SimpleExcelBean.class);
 
+    /**
+     * 并行解析时每次在工作簿的锁内复制的行数
+     */
+    private static final int SHARED_BATCH_SIZE = 256;
+
     /**
      * 是否根据自动更新Class
      */
@@ -44,9 +52,10 @@ public final class SimpleExcelBean extends BaseExcelBean {
 
     private List<String> idPool;
 
-    private Class<?> clazz;
-
-    private String id;
+    /**
+     * 已经尝试解析过的页，解析失败的页同样记录，避免重复解析
+     */
+    private final BitSet loadedPages = new BitSet();
 
     private SimpleExcelBean(@NotNull MultipartFile file){
         super(file,true);
@@ -56,6 +65,10 @@ public final class SimpleExcelBean extends BaseExcelBean {
         super(file,true);
     }
 
+    private SimpleExcelBean(@NotNull InputStream in){
+        super(in,true);
+    }
+
     /**
      * 单页初始化
      * @param id 指派导出类型，为null则自行查询
@@ -65,18 +78,7 @@ public final class SimpleExcelBean extends BaseExcelBean {
     SimpleExcelBean(String id, @NotNull MultipartFile file,@NotNull Integer pageIndex){
         this(file);
         this.isTuring = false;
-        if(StringUtils.isEmpty(id)) {
-            this.isChangeClass = true;
-        }else {
-            this.id = id;
-            this.clazz = msIoContainer.getClazz(id);
-            this.isChangeClass =  false;
-        }
-        try {
-            dataCache.put(pageIndex, this.getPageContent(pageIndex));
-        } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException e) {
-            e.printStackTrace();
-        }
+        loadSinglePage(id, pageIndex);
     }
     /**
      * 单页初始化
@@ -87,22 +89,23 @@ public final class SimpleExcelBean extends BaseExcelBean {
     SimpleExcelBean(String id,@NotNull File file,@NotNull Integer pageIndex){
         this(file);
         this.isTuring = false;
-        if(StringUtils.isEmpty(id)){
-            this.isChangeClass = true;
-        }else {
-            this.id = id;
-            this.clazz = msIoContainer.getClazz(id);
-            this.isChangeClass = false;
-        }
-        try {
-            dataCache.put(pageIndex, this.getPageContent(pageIndex));
-        } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException e) {
-            e.printStackTrace();
-        }
+        loadSinglePage(id, pageIndex);
+    }
+
+    /**
+     * 单页初始化
+     * @param id 指派导出类型，为null则自行查询
+     * @param in 输入流
+     * @param pageIndex 单页码，页码
+     */
+    SimpleExcelBean(String id,@NotNull InputStream in,@NotNull Integer pageIndex){
+        this(in);
+        this.isTuring = false;
+        loadSinglePage(id, pageIndex);
     }
 
     /**
-     * 多页指定每页的id并初始化
+     * 多页指定每页的id并初始化，每页在首次获取时才解析
      * @param idPool 每页的id池，会根据页码去索引，请根据顺序给定
      * @param file 文件流
      * @param isChangeClass 是否自动去寻找类，若设置为false则会省略当前无映射的页
@@ -112,11 +115,10 @@ public final class SimpleExcelBean extends BaseExcelBean {
         this.isTuring = true;
         this.isChangeClass = isChangeClass;
         this.idPool = idPool;
-        automaticPageTurningWithMapping();
     }
 
     /**
-     * 多页指定每页的id并初始化
+     * 多页指定每页的id并初始化，每页在首次获取时才解析
      * @param idPool 每页的id池，会根据页码去索引，请根据顺序给定
      * @param file 文件流
      * @param isChangeClass 是否自动去寻找类，若设置为false则会省略当前无映射的页
@@ -126,11 +128,23 @@ public final class SimpleExcelBean extends BaseExcelBean {
         this.isTuring = true;
         this.isChangeClass = isChangeClass;
         this.idPool = idPool;
-        automaticPageTurningWithMapping();
     }
 
     /**
-     * 多页不指定每页的id初始化
+     * 多页指定每页的id并初始化，每页在首次获取时才解析
+     * @param idPool 每页的id池，会根据页码去索引，请根据顺序给定
+     * @param in 输入流
+     * @param isChangeClass 是否自动去寻找类，若设置为false则会省略当前无映射的页
+     */
+    SimpleExcelBean(@NotNull List<String> idPool,@NotNull InputStream in,boolean isChangeClass){
+        this(in);
+        this.isTuring = true;
+        this.isChangeClass = isChangeClass;
+        this.idPool = idPool;
+    }
+
+    /**
+     * 多页不指定每页的id初始化，每页在首次获取时才解析
      * @param file 文件流
      * @param isChangeClass 若没有指定的class对象是否进行自动寻找
      */
@@ -138,11 +152,10 @@ public final class SimpleExcelBean extends BaseExcelBean {
         this(file);
         this.isTuring = true;
         this.isChangeClass = true;
-        automaticPageTurningWithoutMapping();
     }
 
     /**
-     * 多页不指定每页的id初始化
+     * 多页不指定每页的id初始化，每页在首次获取时才解析
      * @param file 文件流
      * @param isChangeClass 若没有指定的class对象是否进行自动寻找
      */
@@ -150,43 +163,127 @@ public final class SimpleExcelBean extends BaseExcelBean {
         this(file);
         this.isTuring = true;
         this.isChangeClass = isChangeClass;
-        automaticPageTurningWithoutMapping();
     }
 
+    /**
+     * 多页不指定每页的id初始化，每页在首次获取时才解析
+     * @param in 输入流
+     * @param isChangeClass 若没有指定的class对象是否进行自动寻找
+     */
+    SimpleExcelBean(@NotNull InputStream in,boolean isChangeClass){
+        this(in);
+        this.isTuring = true;
+        this.isChangeClass = isChangeClass;
+    }
 
     /**
-     * 未指定反射对象迭代获取
+     * 多页模式下按需解析，首次获取时才转换该页，结果缓存至release为止
+     * @param pageNo 页码
+     * @return 该页转义后的数组
      */
-    private void automaticPageTurningWithoutMapping(){
-        log.info("导入任务开始：");
-        long start = System.currentTimeMillis();
-        for (int i = 0; i < getPageSize(); i++) {
-            try {
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized List getData(Integer pageNo) {
+        if(isTuring && null != pageNo && !loadedPages.get(pageNo)){
+            loadedPages.set(pageNo);
+            loadPage(pageNo);
+        }
+        return super.getData(pageNo);
+    }
 
-                dataCache.put(i, this.getPageContent(i));
-            } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException e) {
-                log.error("迭代时发生异常，异常页" + i);
-                e.printStackTrace();
-            }
+    @Override
+    public synchronized void release(Integer pageNo) {
+        super.release(pageNo);
+        if(null != pageNo){
+            loadedPages.clear(pageNo);
+        }
+    }
+
+    private void loadSinglePage(String id, int pageIndex){
+        try {
+            dataCache.put(pageIndex, this.getPageContent(pageIndex, StringUtils.isEmpty(id) ? null : id, StringUtils.isEmpty(id), false));
+        } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException e) {
+            e.printStackTrace();
         }
-        log.info("导入任务完结，共花费时间" + (System.currentTimeMillis() - start) + "ms");
     }
+
     /**
-     * 指定反射对象迭代获取
+     * 多页模式下并行解析所有尚未解析的页，每页的标题匹配及转换作为独立任务在线程池中执行，
+     * 结果按页码放入缓存，之后getData的行为与按需解析时一致
+     * 所有任务共用同一个POI工作簿，POI不保证工作簿的并发读取安全，因此单元格的读取在工作簿上加锁串行进行，
+     * 每行只复制绑定计划用到的单元格，类型转换及赋值在锁外并行
+     * 线程池拒绝任务时不再提交之后的页，这些页在getData时按需解析，已提交的页照常完成并放入缓存
+     * @param executor 执行解析任务的线程池
      */
-    private void automaticPageTurningWithMapping(){
-        for (int i = 0; i < idPool.size(); i++) {
-            if(StringUtils.isEmpty(idPool.get(i)) || !isChangeClass){
-                continue;
+    synchronized void loadAll(Executor executor){
+        if(!isTuring){
+            return;
+        }
+        log.info("并行导入任务开始：");
+        long start = System.currentTimeMillis();
+        Map<Integer, List<Object>> results = new ConcurrentHashMap<>(getPageSize());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(getPageSize());
+        try {
+            for (int i = 0; i < getPageSize(); i++) {
+                if(loadedPages.get(i)){
+                    continue;
+                }
+                final int pageIndex = i;
+                try {
+                    tasks.add(CompletableFuture.runAsync(() -> {
+                        List<Object> content = convertPage(pageIndex, true);
+                        if(null != content){
+                            results.put(pageIndex, content);
+                        }
+                    }, executor));
+                }catch (RejectedExecutionException e){
+                    log.warn("线程池拒绝了第" + pageIndex + "页的解析任务，剩余的页在获取时按需解析");
+                    break;
+                }
+                //任务被接受之后才标记，被拒绝的页保持未解析
+                loadedPages.set(pageIndex);
             }
-            this.id = idPool.get(i);
-            this.clazz = msIoContainer.getClazz(this.id);
-            try {
-                dataCache.put(i, this.getPageContent(i));
-            } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException e) {
-                log.error("迭代时发生异常，异常页" + i);
-                e.printStackTrace();
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        }finally {
+            dataCache.putAll(results);
+        }
+        log.info("并行导入任务完结，共花费时间" + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void loadPage(int pageIndex){
+        List<Object> content = convertPage(pageIndex, false);
+        if(null != content){
+            dataCache.put(pageIndex, content);
+        }
+    }
+
+    /**
+     * 解析多页模式下的单页，id池中有id的页使用该id，
+     * 无id的页在允许自动寻找时根据标题匹配，否则省略，未给定id池时每页均自动匹配
+     * @param pageIndex 页码
+     * @param shared 是否与其他线程共用工作簿
+     * @return 当前页解析的结果，省略或者解析失败的页为null
+     */
+    private List<Object> convertPage(int pageIndex, boolean shared){
+        if(pageIndex < 0 || pageIndex >= getPageSize()){
+            return null;
+        }
+        String id = null == idPool || pageIndex >= idPool.size() ? null : idPool.get(pageIndex);
+        if(StringUtils.isEmpty(id)){
+            if(null != idPool && !isChangeClass){
+                return null;
             }
+            id = null;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            List<Object> content = this.getPageContent(pageIndex, id, null == id, shared);
+            log.info("第" + pageIndex + "页导入完结，共花费时间" + (System.currentTimeMillis() - start) + "ms");
+            return content;
+        } catch (IndexOutOfSheetSizeException | UnsupportFormatException | NoSuchMethodException | RuntimeException e) {
+            log.error("迭代时发生异常，异常页" + pageIndex);
+            e.printStackTrace();
+            return null;
         }
     }
 
@@ -207,156 +304,71 @@ public final class SimpleExcelBean extends BaseExcelBean {
     /**
      * 获取当前页的数据
      * @param pageIndex 页码
+     * @param id 映射id，为null时根据标题自动寻找
+     * @param isChangeClass 是否根据标题自动寻找映射
+     * @param shared 是否与其他线程共用工作簿，共用时单元格在工作簿的锁内分批复制后再转换
      * @return 当前页解析的结果
      * @throws IndexOutOfSheetSizeException 输入页码数错误超过范围
      * @throws UnsupportFormatException 不支持的excel格式
      * @throws NoSuchMethodException 解析的时候未找到相应转换方法报的错误
      */
     @SuppressWarnings("unchecked")
-    private List getPageContent(int pageIndex) throws IndexOutOfSheetSizeException,UnsupportFormatException,NoSuchMethodException{
+    private List<Object> getPageContent(int pageIndex, String id, boolean isChangeClass, boolean shared) throws IndexOutOfSheetSizeException,UnsupportFormatException,NoSuchMethodException{
 
         if(getPageSize() <= pageIndex){
             throw new IndexOutOfSheetSizeException("页码最大值为"+getPageSize()+"的数据，强行获取"+pageIndex+"页数据");
         }
-        Sheet sheetNow = workbook.getSheetAt(pageIndex);
-        int regionNum = sheetNow.getNumMergedRegions();
+        Sheet sheetNow;
         //初始行
         int rowIndex = 0;
-        if(regionNum > 1){
-            throw new UnsupportFormatException("当前模式不支持多个合并单元格格式的解析，请切换解析方式为复杂方式");
-        }
-        //标题切除
-        if(regionNum == 1){
-            CellRangeAddress mergedRegion = sheetNow.getMergedRegion(0);
-            if(mergedRegion.getFirstRow() != 0){
-                throw new UnsupportFormatException("当前模式仅支持首行标题合并解析，请切换解析方式为复杂模式");
+        int lastRowNum;
+        List<String> titles;
+        synchronized (workbook){
+            sheetNow = workbook.getSheetAt(pageIndex);
+            int regionNum = sheetNow.getNumMergedRegions();
+            if(regionNum > 1){
+                throw new UnsupportFormatException("当前模式不支持多个合并单元格格式的解析，请切换解析方式为复杂方式");
+            }
+            //标题切除
+            if(regionNum == 1){
+                CellRangeAddress mergedRegion = sheetNow.getMergedRegion(0);
+                if(mergedRegion.getFirstRow() != 0){
+                    throw new UnsupportFormatException("当前模式仅支持首行标题合并解析，请切换解析方式为复杂模式");
+                }
+                rowIndex = mergedRegion.getLastRow() + 1;
             }
-            rowIndex = mergedRegion.getLastRow() + 1;
+            titles = MsUtils.getRowDataInString(rowIndex ++, 0, 0, sheetNow);
+            lastRowNum = sheetNow.getLastRowNum();
         }
         //正式解析
-        List<String> titles = MsUtils.getRowDataInString(rowIndex ++, 0, 0, sheetNow);
-        if(titles == null || titles.size() == 0){
-            throw new NullPointerException("标题行为空，请检查格式");
-        }
-        LinkedHashMap<String, MsIoContainer.Information> mapping;
-        //若clazz为null，则自动匹配
-        if(id == null || isChangeClass){
-            String match = msIoContainer.match(titles,false);
-            mapping = msIoContainer.get(match);
-            clazz = msIoContainer.getClazz(match);
-        }else{
-            mapping = msIoContainer.get(id);
-        }
-        LinkedHashMap<String, String> inversion = MsUtils.mapInversion(mapping);
-        if(inversion.isEmpty()){
-            titles.forEach(s -> inversion.put(s,s));
-        }
-        List list = new ArrayList();
-        if(clazz == Map.class){
-            for (int i = rowIndex; i <= sheetNow.getLastRowNum(); i++) {
-                list.add(conversionMap(sheetNow.getRow(rowIndex), inversion, titles));
+        ExcelRowBinder binder = ExcelRowBinder.build(msIoContainer, formatConversion, id, isChangeClass, titles);
+        List<Object> list = new ArrayList<>();
+        if(!shared){
+            for (int i = rowIndex; i <= lastRowNum; i++) {
+                Row row = sheetNow.getRow(i);
+                if(null == row){
+                    continue;
+                }
+                list.add(binder.bind(row));
             }
         }else{
-            for (int i = rowIndex; i <= sheetNow.getLastRowNum(); i++) {
-                list.add(conversionPojo(sheetNow.getRow(rowIndex), inversion, titles, clazz, mapping));
-            }
-        }
-        return list;
-    }
-
-    /**
-     * 内置工具方法，获取当前行的解析结果
-     * @param row 待处理数据
-     * @param inversion 映射数据
-     * @param titles 提取出的标题数据
-     * @return 解析结果
-     */
-    private Map<String,String> conversionMap(Row row, LinkedHashMap<String, String> inversion, List<String> titles){
-        Map<String, String> result = new HashMap<>(16);
-        for (int i = 0; i < titles.size(); i++) {
-            String value = MsUtils.getStringValueFromCell(row.getCell(i));
-            result.put(inversion.get(titles.get(i)),value);
-        }
-        return result;
-    }
-
-    /**
-     * 内置工具方法，获取当前行的解析Pojo结果
-     * @param row 待处理行数据
-     * @param inversion 映射数据
-     * @param titles 提取出来的标题数据
-     * @param clazz Pojo对应类
-     * @param auto 自动赋值方法
-     * @return 解析结果
-     * @throws NoSuchMethodException 找不到对应的方法
-     */
-    @SuppressWarnings("all")
-    private Object conversionPojo(Row row, LinkedHashMap<String, String> inversion, List<String> titles, Class<?> clazz,
-                                  LinkedHashMap<String,MsIoContainer.Information> auto) throws NoSuchMethodException{
-        Object obj = null;
-        try {
-            obj = clazz.newInstance();
-        } catch (InstantiationException|IllegalAccessException e) {
-            log.error(clazz.getName() + "创建失败，请检查是否存在无参构造函数或者是否设置构造函数为non-private");
-            e.printStackTrace();
-        }
-        for (int i = 0; i < titles.size(); i++) {
-            String value = MsUtils.getStringValueFromCell(row.getCell(i));
-            String title = titles.get(i);
-            String egTitle = inversion.get(title);
-            MsIoContainer.Information information = auto.get(egTitle);
-            if(information.getFieldType() == String.class){
-                ClassUtils.setFieldValue(value, egTitle, obj, clazz);
-                //倘若导入目标为集合的情况
-            }else if(List.class.isAssignableFrom(information.getFieldType())){
-                String simpleName = "fromStringtoListBy" + information.getFieldType().getSimpleName();
-                Object invoke;
-                try {
-                    invoke = ClassUtils.invokeMethod(formatConversion, simpleName, value);
-                }catch (IllegalArgumentException e){
-                    log.error("尝试使用" + simpleName + "获取方法失败，正在尝试使用全名获取");
-                    String flexName = "fromStringtoSetBy" + information.getFieldType().getName().replaceAll(".", "");
-                    try {
-                        invoke = ClassUtils.invokeMethod(formatConversion, flexName, value);
-                    }catch (IllegalArgumentException e1){
-                        log.error("尝试使用" + flexName + "获取方法失败，抛出异常，请检查是否存在方法或者方法是否设置为non-private");
-                        throw new NoSuchMethodException("无法找到方法" + simpleName + "、" + flexName);
+            List<List<String>> batch = new ArrayList<>(SHARED_BATCH_SIZE);
+            for (int i = rowIndex; i <= lastRowNum; i += SHARED_BATCH_SIZE) {
+                batch.clear();
+                synchronized (workbook){
+                    for (int j = i; j <= lastRowNum && j < i + SHARED_BATCH_SIZE; j++) {
+                        Row row = sheetNow.getRow(j);
+                        if(null != row){
+                            batch.add(binder.snapshot(row));
+                        }
                     }
                 }
-                ClassUtils.setFieldValue(value, egTitle, obj, clazz);
-            }else if(Set.class.isAssignableFrom(information.getFieldType())){
-                String simpleName = "fromStringtoSetBy" + information.getFieldType().getSimpleName();
-                Object invoke;
-                try {
-                    invoke = ClassUtils.invokeMethod(formatConversion, simpleName, value);
-                }catch (IllegalArgumentException e){
-                    log.error("尝试使用" + simpleName + "获取方法失败，正在尝试使用全名获取");
-                    String flexName = "fromStringtoSetBy" + information.getFieldType().getName().replaceAll(".", "");
-                    try {
-                        invoke = ClassUtils.invokeMethod(formatConversion, flexName, value);
-                    }catch (IllegalArgumentException e1){
-                        log.error("尝试使用" + flexName + "获取方法失败，抛出异常，请检查是否存在方法或者方法是否设置为non-private");
-                        throw new NoSuchMethodException("无法找到方法" + simpleName + "、" + flexName);
-                    }
-                }
-                ClassUtils.setFieldValue(value, egTitle, obj, clazz);
-            }else{
-                String simpleName = "fromStringto" + information.getFieldType().getSimpleName();
-                Object invoke;
-                try {
-                    invoke = ClassUtils.invokeMethod(formatConversion, simpleName, value);
-                }catch (IllegalArgumentException e){
-                    log.error("尝试使用" + simpleName + "获取方法失败，正在尝试使用全名获取");
-                    String flexName = "fromStringto" + information.getFieldType().getName().replaceAll(".", "");
-                    try {
-                        invoke = ClassUtils.invokeMethod(formatConversion, flexName, value);
-                    }catch (IllegalArgumentException e1){
-                        throw new NoSuchMethodException("尝试使用" + flexName + "获取方法失败，抛出异常，请检查是否存在方法或者方法是否设置为non-private");
-                    }
+                for (List<String> values : batch) {
+                    list.add(binder.bind(values));
                 }
-                ClassUtils.setFieldValue(invoke, egTitle, obj, clazz);
             }
         }
-        return obj;
+        binder.report();
+        return list;
     }
 }
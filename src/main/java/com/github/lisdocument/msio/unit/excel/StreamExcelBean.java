@@ -0,0 +1,341 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.bean.common.IFormatConversion;
+import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.utils.MsUtils;
+import com.github.lisdocument.msio.utils.SpringUtils;
+import com.google.common.collect.Maps;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.validation.constraints.NotNull;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 简单Excel流式导入功能，逐行读取并转换，不构建整个工作簿的DOM，xlsx基于SAX，xls基于HSSF事件模型，按文件头自动区分
+ * 内存占用由行宽决定而不是文件大小，映射及转换规则与SimpleExcelBean一致，标题行的识别见SheetRowDispatcher
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class StreamExcelBean implements IExcelBean {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamExcelBean.class);
+
+    private final MsIoContainer msIoContainer = SpringUtils.getBean(MsIoContainer.class);
+
+    private final IFormatConversion formatConversion = SpringUtils.getBean(IFormatConversion.class);
+
+    private final Map<Integer, List<Object>> dataCache = Maps.newHashMapWithExpectedSize(64);
+
+    /**
+     * 读取到的总页数
+     */
+    private int sheetSize;
+
+    /**
+     * 单页初始化
+     * @param id 指派导出类型，为null则自行查询
+     * @param file 文件
+     * @param pageIndex 单页码，页码
+     */
+    StreamExcelBean(String id, @NotNull File file, @NotNull Integer pageIndex){
+        load(file, new SheetRowDispatcher(msIoContainer, formatConversion, id, pageIndex, null, true, this::collect));
+    }
+
+    /**
+     * 单页初始化
+     * @param id 指派导出类型，为null则自行查询
+     * @param file 文件流
+     * @param pageIndex 单页码，页码
+     */
+    StreamExcelBean(String id, @NotNull MultipartFile file, @NotNull Integer pageIndex){
+        load(file, new SheetRowDispatcher(msIoContainer, formatConversion, id, pageIndex, null, true, this::collect));
+    }
+
+    /**
+     * 单页初始化
+     * @param id 指派导出类型，为null则自行查询
+     * @param path 文件路径
+     * @param pageIndex 单页码，页码
+     */
+    StreamExcelBean(String id, @NotNull Path path, @NotNull Integer pageIndex){
+        load(path, new SheetRowDispatcher(msIoContainer, formatConversion, id, pageIndex, null, true, this::collect));
+    }
+
+    /**
+     * 多页指定每页的id并初始化
+     * @param idPool 每页的id池，会根据页码去索引，请根据顺序给定
+     * @param file 文件
+     * @param isChangeClass 是否自动去寻找类，若设置为false则会省略当前无映射的页
+     */
+    StreamExcelBean(@NotNull List<String> idPool, @NotNull File file, boolean isChangeClass){
+        load(file, new SheetRowDispatcher(msIoContainer, formatConversion, null, null, idPool, isChangeClass, this::collect));
+    }
+
+    /**
+     * 多页指定每页的id并初始化
+     * @param idPool 每页的id池，会根据页码去索引，请根据顺序给定
+     * @param file 文件流
+     * @param isChangeClass 是否自动去寻找类，若设置为false则会省略当前无映射的页
+     */
+    StreamExcelBean(@NotNull List<String> idPool, @NotNull MultipartFile file, boolean isChangeClass){
+        load(file, new SheetRowDispatcher(msIoContainer, formatConversion, null, null, idPool, isChangeClass, this::collect));
+    }
+
+    /**
+     * 多页指定每页的id并初始化
+     * @param idPool 每页的id池，会根据页码去索引，请根据顺序给定
+     * @param path 文件路径
+     * @param isChangeClass 是否自动去寻找类，若设置为false则会省略当前无映射的页
+     */
+    StreamExcelBean(@NotNull List<String> idPool, @NotNull Path path, boolean isChangeClass){
+        load(path, new SheetRowDispatcher(msIoContainer, formatConversion, null, null, idPool, isChangeClass, this::collect));
+    }
+
+    /**
+     * 多页不指定每页的id初始化，每页根据标题自动寻找映射
+     * @param file 文件
+     */
+    StreamExcelBean(@NotNull File file){
+        load(file, new SheetRowDispatcher(msIoContainer, formatConversion, null, null, null, true, this::collect));
+    }
+
+    /**
+     * 多页不指定每页的id初始化，每页根据标题自动寻找映射
+     * @param file 文件流
+     */
+    StreamExcelBean(@NotNull MultipartFile file){
+        load(file, new SheetRowDispatcher(msIoContainer, formatConversion, null, null, null, true, this::collect));
+    }
+
+    /**
+     * 多页不指定每页的id初始化，每页根据标题自动寻找映射
+     * @param path 文件路径
+     */
+    StreamExcelBean(@NotNull Path path){
+        load(path, new SheetRowDispatcher(msIoContainer, formatConversion, null, null, null, true, this::collect));
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List getData(Integer pageNo) {
+        return dataCache.getOrDefault(pageNo, new ArrayList<>());
+    }
+
+    @Override
+    public int getDataSize() {
+        return sheetSize;
+    }
+
+    @Override
+    public void release(Integer pageNo) {
+        dataCache.remove(pageNo);
+    }
+
+    private void load(File file, SheetRowDispatcher dispatcher){
+        read(file, dispatcher);
+        finish(dispatcher);
+    }
+
+    private void load(MultipartFile file, SheetRowDispatcher dispatcher){
+        read(file, dispatcher);
+        finish(dispatcher);
+    }
+
+    private void load(Path path, SheetRowDispatcher dispatcher){
+        read(path, dispatcher);
+        finish(dispatcher);
+    }
+
+    private void collect(int sheetIndex, int rowNum, Object row){
+        dataCache.computeIfAbsent(sheetIndex, k -> new ArrayList<>()).add(row);
+    }
+
+    /**
+     * 转换失败的页整页丢弃，与SimpleExcelBean保持一致
+     * @param dispatcher 已完成解析的分发器
+     */
+    private void finish(SheetRowDispatcher dispatcher){
+        sheetSize = dispatcher.getSheetSize();
+        dataCache.keySet().removeIf(dispatcher::isFailed);
+    }
+
+    /**
+     * 流式读取文件，按文件头自动区分xls及xlsx
+     * @param file 文件
+     * @param listener 行监听器
+     */
+    static void read(File file, IExcelRowListener listener){
+        read(file, listener, ExcelImportOption.StringStorage.HEAP);
+    }
+
+    /**
+     * 流式读取文件，按文件头自动区分xls及xlsx
+     * @param file 文件
+     * @param listener 行监听器
+     * @param stringStorage xlsx共享字符串表的存放方式
+     */
+    static void read(File file, IExcelRowListener listener, ExcelImportOption.StringStorage stringStorage){
+        ExcelFactory.ExcelDealType type;
+        try {
+            type = MsUtils.detectType(file);
+        }catch (Exception e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
+        if(null == type){
+            throw new IllegalArgumentException("文件不是xls或者xlsx格式");
+        }
+        if(ExcelFactory.ExcelDealType.XLS == type){
+            NPOIFSFileSystem fs;
+            try {
+                fs = new NPOIFSFileSystem(file, true);
+            }catch (Exception e){
+                throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+            }
+            read(fs, listener);
+            return;
+        }
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        }catch (Exception e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
+        read(pkg, listener, stringStorage);
+    }
+
+    /**
+     * 流式读取文件，见read(Path, IExcelRowListener, ExcelImportOption.StringStorage)
+     * @param path 文件路径
+     * @param listener 行监听器
+     */
+    static void read(Path path, IExcelRowListener listener){
+        read(path, listener, ExcelImportOption.StringStorage.HEAP);
+    }
+
+    /**
+     * 流式读取文件，默认文件系统中的文件与read(File, ...)一致，
+     * 其余文件系统（如zip中的文件）不支持toFile，通过流读取，读取完毕后关闭
+     * @param path 文件路径
+     * @param listener 行监听器
+     * @param stringStorage xlsx共享字符串表的存放方式
+     */
+    static void read(Path path, IExcelRowListener listener, ExcelImportOption.StringStorage stringStorage){
+        if(path.getFileSystem() == FileSystems.getDefault()){
+            read(path.toFile(), listener, stringStorage);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(path)){
+            read(in, listener, stringStorage);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
+    }
+
+    /**
+     * 流式读取上传的文件，按文件头自动区分xls及xlsx
+     * @param file 文件流
+     * @param listener 行监听器
+     */
+    static void read(MultipartFile file, IExcelRowListener listener){
+        read(file, listener, ExcelImportOption.StringStorage.HEAP);
+    }
+
+    /**
+     * 流式读取上传的文件，按文件头自动区分xls及xlsx
+     * @param file 文件流
+     * @param listener 行监听器
+     * @param stringStorage xlsx共享字符串表的存放方式
+     */
+    static void read(MultipartFile file, IExcelRowListener listener, ExcelImportOption.StringStorage stringStorage){
+        try (InputStream in = file.getInputStream()){
+            read(in, listener, stringStorage);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入",e);
+        }
+    }
+
+    /**
+     * 流式读取输入流，按文件头自动区分xls及xlsx，流只会被顺序读取一次，
+     * xlsx按zip条目的顺序边读边解析，不需要整个文件驻留在内存中；
+     * xls（OLE2）需要随机访问，NPOIFSFileSystem会先将整个流读入内存
+     * @param in 输入流
+     * @param listener 行监听器
+     */
+    static void read(InputStream in, IExcelRowListener listener){
+        read(in, listener, ExcelImportOption.StringStorage.HEAP);
+    }
+
+    /**
+     * 流式读取输入流，见read(InputStream, IExcelRowListener)
+     * @param in 输入流
+     * @param listener 行监听器
+     * @param stringStorage xlsx共享字符串表的存放方式
+     */
+    static void read(InputStream in, IExcelRowListener listener, ExcelImportOption.StringStorage stringStorage){
+        try {
+            InputStream stream = in.markSupported() ? in : new BufferedInputStream(in);
+            ExcelFactory.ExcelDealType type = MsUtils.detectType(stream);
+            if(ExcelFactory.ExcelDealType.XLS == type){
+                read(new NPOIFSFileSystem(stream), listener);
+                return;
+            }
+            if(ExcelFactory.ExcelDealType.XLSX != type){
+                throw new IllegalArgumentException("文件不是xls或者xlsx格式");
+            }
+            log.info("流式导入任务开始：");
+            long start = System.currentTimeMillis();
+            new XlsxZipStreamReader(listener, stringStorage).read(stream);
+            log.info("流式导入任务完结，共花费时间" + (System.currentTimeMillis() - start) + "ms");
+        }catch (RuntimeException e){
+            throw e;
+        }catch (Exception e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入",e);
+        }
+    }
+
+    private static void read(OPCPackage pkg, IExcelRowListener listener, ExcelImportOption.StringStorage stringStorage){
+        log.info("流式导入任务开始：");
+        long start = System.currentTimeMillis();
+        try {
+            new XlsxStreamReader(stringStorage).read(pkg, listener);
+        }catch (RuntimeException e){
+            throw e;
+        }catch (Exception e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入",e);
+        }finally {
+            pkg.revert();
+        }
+        log.info("流式导入任务完结，共花费时间" + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void read(NPOIFSFileSystem fs, IExcelRowListener listener){
+        log.info("流式导入任务开始：");
+        long start = System.currentTimeMillis();
+        try {
+            new XlsStreamReader().read(fs.getRoot(), listener);
+        }catch (RuntimeException e){
+            throw e;
+        }catch (Exception e){
+            throw new IllegalArgumentException("文件格式不符合，无法加入",e);
+        }finally {
+            IOUtils.closeQuietly(fs);
+        }
+        log.info("流式导入任务完结，共花费时间" + (System.currentTimeMillis() - start) + "ms");
+    }
+}
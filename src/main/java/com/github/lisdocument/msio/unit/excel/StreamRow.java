@@ -0,0 +1,129 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import com.github.lisdocument.msio.utils.MsUtils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流式解析的单行数据，数字单元格保留原始数值，仅在按字符串读取时才格式化，
+ * 绑定到数字或日期字段时直接使用原始数值，避免格式化再解析
+ * @author Libin
+ * @version 1.0.2
+ */
+final class StreamRow extends AbstractList<String> implements RandomAccess {
+
+    private static final byte TYPE_TEXT = 0;
+
+    private static final byte TYPE_NUMERIC = 1;
+
+    private static final byte TYPE_DATE = 2;
+
+    private String[] texts;
+
+    private double[] numbers;
+
+    private byte[] types;
+
+    private int size;
+
+    StreamRow(int capacity) {
+        this.texts = new String[capacity];
+        this.numbers = new double[capacity];
+        this.types = new byte[capacity];
+    }
+
+    @Override
+    public String get(int index) {
+        if(index >= size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        String text = texts[index];
+        if(null == text){
+            text = MsUtils.formatNumeric(numbers[index], TYPE_DATE == types[index]);
+            texts[index] = text;
+        }
+        return text;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 写入字符串单元格，跳过的列以""补齐
+     * @param column 列号
+     * @param text 单元格的值
+     */
+    void putText(int column, String text){
+        ensure(column);
+        texts[column] = text;
+        types[column] = TYPE_TEXT;
+    }
+
+    /**
+     * 写入数字单元格，跳过的列以""补齐
+     * @param column 列号
+     * @param d 数值
+     * @param isDate 是否为日期
+     */
+    void putNumeric(int column, double d, boolean isDate){
+        ensure(column);
+        texts[column] = null;
+        numbers[column] = d;
+        types[column] = isDate ? TYPE_DATE : TYPE_NUMERIC;
+    }
+
+    /**
+     * 写入数字单元格及其已格式化的字符串，复制DOM模式的单元格时使用
+     * @param column 列号
+     * @param d 数值
+     * @param isDate 是否为日期
+     * @param text 单元格的字符串值
+     */
+    void putNumeric(int column, double d, boolean isDate, String text){
+        putNumeric(column, d, isDate);
+        texts[column] = text;
+    }
+
+    /**
+     * @param index 列号
+     * @return 是否为非日期格式的数字单元格
+     */
+    boolean isNumeric(int index){
+        return index < size && TYPE_NUMERIC == types[index];
+    }
+
+    /**
+     * @param index 列号
+     * @return 是否为日期格式的数字单元格
+     */
+    boolean isDate(int index){
+        return index < size && TYPE_DATE == types[index];
+    }
+
+    /**
+     * @param index 列号
+     * @return 数字单元格的原始数值
+     */
+    double getNumber(int index){
+        return numbers[index];
+    }
+
+    private void ensure(int column){
+        if(column >= texts.length){
+            int capacity = Math.max(column + 1, texts.length * 2);
+            texts = Arrays.copyOf(texts, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        for (int i = size; i < column; i++) {
+            texts[i] = "";
+            types[i] = TYPE_TEXT;
+        }
+        size = Math.max(size, column + 1);
+    }
+}
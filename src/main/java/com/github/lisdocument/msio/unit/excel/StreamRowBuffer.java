@@ -0,0 +1,134 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.util.BitSet;
+
+/**
+ * Created with IntelliJ IDEA.
+ * 流式解析时单行数据的组装，xls与xlsx共用，
+ * 单元格字符串格式与MsUtils.getStringValueFromCell保持一致，数字单元格保留原始数值，按需格式化
+ * @author Libin
+ * @version 1.0.2
+ */
+final class StreamRowBuffer {
+
+    private final int sheetIndex;
+
+    private final IExcelRowListener listener;
+
+    private StreamRow values;
+
+    /**
+     * 当前行需要读取的列，为null时读取全部列
+     */
+    private BitSet columns;
+
+    private int rowNum = -1;
+
+    private boolean notEmpty;
+
+    /**
+     * 上一行的宽度，用于预估下一行的容量
+     */
+    private int lastWidth = 16;
+
+    StreamRowBuffer(int sheetIndex, IExcelRowListener listener) {
+        this.sheetIndex = sheetIndex;
+        this.listener = listener;
+    }
+
+    int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * 开始新的一行
+     * @param rowNum 行号
+     */
+    void start(int rowNum){
+        this.rowNum = rowNum;
+        this.values = new StreamRow(lastWidth);
+        this.notEmpty = false;
+        this.columns = listener.columns(sheetIndex);
+    }
+
+    /**
+     * 当前行是否需要读取该列，不需要的列由解析器直接跳过
+     * @param column 列号
+     * @return 需要读取为true
+     */
+    boolean wants(int column){
+        return null == columns || columns.get(column);
+    }
+
+    /**
+     * 跳过不需要读取的单元格，该列在行数据中为""，有值的单元格仍然使当前行成为非空行
+     * @param hasValue 单元格是否有值
+     */
+    void skip(boolean hasValue){
+        if(hasValue){
+            notEmpty = true;
+        }
+    }
+
+    /**
+     * 是否存在未推送的行
+     * @return 存在为true
+     */
+    boolean isStarted(){
+        return null != values;
+    }
+
+    /**
+     * 写入单元格，跳过的列以""补齐
+     * @param column 列号
+     * @param text 单元格的值
+     */
+    void set(int column, String text){
+        values.putText(column, text);
+        if(!text.trim().isEmpty()){
+            notEmpty = true;
+        }
+    }
+
+    /**
+     * 写入数字单元格，跳过的列以""补齐
+     * @param column 列号
+     * @param d 数值
+     * @param isDateFormat 单元格样式是否为日期格式
+     */
+    void setNumeric(int column, double d, boolean isDateFormat){
+        values.putNumeric(column, d, isDateFormat && DateUtil.isValidExcelDate(d));
+        notEmpty = true;
+    }
+
+    /**
+     * 监听器是否已经不需要该页剩余的行
+     * @return 不需要为true
+     */
+    boolean isSheetDone(){
+        return listener.isSheetDone(sheetIndex);
+    }
+
+    /**
+     * 丢弃当前行，不推送
+     */
+    void discard(){
+        values = null;
+    }
+
+    /**
+     * 结束当前行，空行不推送，与DOM模式下的空行处理保持一致
+     */
+    void end(){
+        if(null == values){
+            return;
+        }
+        lastWidth = Math.max(lastWidth, values.size());
+        if(notEmpty){
+            listener.row(sheetIndex, rowNum, values);
+        }
+        values = null;
+    }
+}
@@ -0,0 +1,239 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * xls(BIFF8)的流式读取，基于HSSFEventFactory逐条处理记录，不构建HSSFWorkbook，
+ * 单元格的字符串格式与MsUtils.getStringValueFromCell保持一致，公式单元格取缓存的计算结果
+ * @author Libin
+ * @version 1.0.2
+ */
+final class XlsStreamReader {
+
+    /**
+     * 读取整个工作簿，监听器不再需要更多的页时在当前页结束后停止
+     * @param root poifs文件系统的根目录
+     * @param listener 行监听器
+     * @throws IOException 读取错误
+     */
+    void read(DirectoryNode root, IExcelRowListener listener) throws IOException {
+        RecordHandler handler = new RecordHandler(listener);
+        FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(handler);
+        handler.formatListener = formatListener;
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(new AbortableHSSFListener() {
+            @Override
+            public short abortableProcessRecord(Record record) {
+                formatListener.processRecord(record);
+                return handler.done ? (short) 1 : 0;
+            }
+        });
+        new HSSFEventFactory().processWorkbookEvents(request, root);
+    }
+
+    /**
+     * 记录的处理，单元格记录以行为单位顺序出现，行号变化时推送上一行
+     */
+    private static final class RecordHandler implements HSSFListener{
+
+        private final IExcelRowListener listener;
+
+        private FormatTrackingHSSFListener formatListener;
+
+        private final List<String> sheetNames = new ArrayList<>();
+
+        private SSTRecord sharedStrings;
+
+        private StreamRowBuffer row;
+
+        /**
+         * BOF嵌套深度，工作表中内嵌的图表也有独立的BOF/EOF
+         */
+        private int depth;
+
+        private int sheetIndex = -1;
+
+        /**
+         * 当前页是否需要解析
+         */
+        private boolean active;
+
+        /**
+         * 监听器不再需要当前页剩余的行，之后到页结束的单元格记录都跳过
+         */
+        private boolean sheetDone;
+
+        /**
+         * 监听器不再需要更多的页，停止读取
+         */
+        private boolean done;
+
+        /**
+         * 等待StringRecord给出缓存值的公式单元格列号
+         */
+        private int pendingFormulaColumn = -1;
+
+        private RecordHandler(IExcelRowListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            if(record instanceof CellValueRecordInterface){
+                //跳过的页不处理单元格记录
+                if(!active || sheetDone){
+                    return;
+                }
+                CellValueRecordInterface cell = (CellValueRecordInterface) record;
+                if(nextCell(cell) && row.isSheetDone()){
+                    sheetDone = true;
+                    row.discard();
+                    if(listener.isDone()){
+                        //不再需要之后的页，结束当前页后立即停止，剩余的记录不再解码
+                        listener.endSheet(sheetIndex);
+                        row = null;
+                        active = false;
+                        done = true;
+                    }
+                    return;
+                }
+                //不需要的列不查找共享字符串及格式
+                if(!row.wants(cell.getColumn())){
+                    row.skip(BlankRecord.sid != record.getSid());
+                    return;
+                }
+            }
+            switch (record.getSid()){
+                case BOFRecord.sid:
+                    depth ++;
+                    if(1 == depth && BOFRecord.TYPE_WORKBOOK != ((BOFRecord) record).getType()){
+                        sheetIndex ++;
+                        sheetDone = false;
+                        row = new StreamRowBuffer(sheetIndex, listener);
+                        active = listener.startSheet(sheetIndex, sheetIndex < sheetNames.size() ? sheetNames.get(sheetIndex) : null);
+                    }
+                    break;
+                case EOFRecord.sid:
+                    depth --;
+                    if(0 == depth && null != row){
+                        if(active){
+                            row.end();
+                            listener.endSheet(sheetIndex);
+                        }
+                        row = null;
+                        active = false;
+                        done = listener.isDone();
+                    }
+                    break;
+                case BoundSheetRecord.sid:
+                    sheetNames.add(((BoundSheetRecord) record).getSheetname());
+                    break;
+                case SSTRecord.sid:
+                    sharedStrings = (SSTRecord) record;
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord label = (LabelSSTRecord) record;
+                    cell(label, sharedStrings.getString(label.getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord text = (LabelRecord) record;
+                    cell(text, text.getValue());
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    numeric(number, number.getValue());
+                    break;
+                case RKRecord.sid:
+                    RKRecord rk = (RKRecord) record;
+                    numeric(rk, rk.getRKNumber());
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord boolErr = (BoolErrRecord) record;
+                    cell(boolErr, boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()) : "");
+                    break;
+                case BlankRecord.sid:
+                    cell((BlankRecord) record, "");
+                    break;
+                case FormulaRecord.sid:
+                    formula((FormulaRecord) record);
+                    break;
+                case StringRecord.sid:
+                    if(-1 != pendingFormulaColumn && active && !sheetDone){
+                        row.set(pendingFormulaColumn, ((StringRecord) record).getString());
+                    }
+                    pendingFormulaColumn = -1;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void formula(FormulaRecord formula){
+            switch (formula.getCachedResultType()){
+                case Cell.CELL_TYPE_NUMERIC:
+                    numeric(formula, formula.getValue());
+                    break;
+                case Cell.CELL_TYPE_BOOLEAN:
+                    cell(formula, String.valueOf(formula.getCachedBooleanValue()));
+                    break;
+                case Cell.CELL_TYPE_STRING:
+                    //字符串结果存放在紧随其后的StringRecord中
+                    cell(formula, "");
+                    pendingFormulaColumn = formula.hasCachedResultString() ? formula.getColumn() : -1;
+                    break;
+                default:
+                    cell(formula, "");
+                    break;
+            }
+        }
+
+        private void cell(CellValueRecordInterface record, String value){
+            row.set(record.getColumn(), value);
+        }
+
+        private void numeric(CellValueRecordInterface record, double value){
+            int formatIndex = formatListener.getFormatIndex(record);
+            String formatString = formatListener.getFormatString(formatIndex);
+            row.setNumeric(record.getColumn(), value, DateUtil.isADateFormat(formatIndex, formatString));
+        }
+
+        /**
+         * 单元格属于新的一行时推送上一行
+         * @return 是否开始了新的一行
+         */
+        private boolean nextCell(CellValueRecordInterface record){
+            if(!row.isStarted() || row.getRowNum() != record.getRow()){
+                row.end();
+                row.start(record.getRow());
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Created with IntelliJ IDEA.
+ * xlsx的流式读取，基于XSSFReader+SAX逐行读取，不构建XSSFWorkbook的DOM
+ * 单元格的字符串格式与MsUtils.getStringValueFromCell保持一致，公式单元格取缓存的计算结果
+ * @author Libin
+ * @version 1.0.2
+ */
+final class XlsxStreamReader {
+
+    private final ExcelImportOption.StringStorage stringStorage;
+
+    private static final String ROW = "row";
+
+    private static final String CELL = "c";
+
+    private static final String VALUE = "v";
+
+    private static final String INLINE_TEXT = "t";
+
+    private static final String ATTR_REF = "r";
+
+    private static final String ATTR_TYPE = "t";
+
+    private static final String ATTR_STYLE = "s";
+
+    private static final String TYPE_SHARED = "s";
+
+    private static final String TYPE_INLINE = "inlineStr";
+
+    private static final String TYPE_BOOLEAN = "b";
+
+    private static final String TYPE_ERROR = "e";
+
+    /**
+     * @param stringStorage 共享字符串表的存放方式
+     */
+    XlsxStreamReader(ExcelImportOption.StringStorage stringStorage) {
+        this.stringStorage = stringStorage;
+    }
+
+    /**
+     * 读取整个工作簿
+     * @param pkg xlsx包
+     * @param listener 行监听器
+     * @throws IOException 读取错误
+     * @throws OpenXML4JException 文件不是合法的xlsx
+     * @throws SAXException xml解析错误
+     * @throws ParserConfigurationException xml解析器创建失败
+     */
+    void read(OPCPackage pkg, IExcelRowListener listener) throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        XSSFReader reader = new XSSFReader(pkg);
+        List<String> sharedStrings = Collections.emptyList();
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        try {
+            if(!parts.isEmpty()){
+                try (InputStream in = parts.get(0).getInputStream()){
+                    sharedStrings = readSharedStrings(in, stringStorage);
+                }
+            }
+            IntPredicate dateStyles = dateStyles(reader.getStylesTable());
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int sheetIndex = 0;
+            while (sheets.hasNext() && !listener.isDone()){
+                try (InputStream sheet = sheets.next()){
+                    if(listener.startSheet(sheetIndex, sheets.getSheetName())) {
+                        readSheet(sheet, sheetIndex, sharedStrings, dateStyles, listener);
+                        listener.endSheet(sheetIndex);
+                    }
+                }
+                sheetIndex ++;
+            }
+        }finally {
+            if(sharedStrings instanceof CompactSharedStrings){
+                ((CompactSharedStrings) sharedStrings).close();
+            }
+        }
+    }
+
+    /**
+     * 读取共享字符串，富文本取各段文本的拼接，忽略注音
+     * @param in 共享字符串的xml
+     * @param stringStorage 存放方式，HEAP之外的方式返回的表需要close
+     * @return 共享字符串，下标即共享字符串的序号
+     * @throws IOException 读取错误
+     * @throws SAXException xml解析错误
+     * @throws ParserConfigurationException xml解析器创建失败
+     */
+    static List<String> readSharedStrings(InputStream in, ExcelImportOption.StringStorage stringStorage)
+            throws IOException, SAXException, ParserConfigurationException {
+        SharedStringsHandler handler = new SharedStringsHandler(stringStorage);
+        XMLReader xmlReader = SAXHelper.newXMLReader();
+        xmlReader.setContentHandler(handler);
+        try {
+            xmlReader.parse(new InputSource(in));
+        }catch (IOException | SAXException | RuntimeException e){
+            handler.close();
+            throw e;
+        }
+        return handler.finish();
+    }
+
+    /**
+     * 解析单页的xml，监听器不再需要该页的行时提前结束
+     * @param sheet 页的xml
+     * @param sheetIndex 页码
+     * @param sharedStrings 共享字符串，下标即共享字符串的序号
+     * @param dateStyles 样式序号是否为日期格式
+     * @param listener 行监听器
+     * @throws IOException 读取错误
+     * @throws SAXException xml解析错误
+     * @throws ParserConfigurationException xml解析器创建失败
+     */
+    static void readSheet(InputStream sheet, int sheetIndex, List<String> sharedStrings, IntPredicate dateStyles,
+                          IExcelRowListener listener) throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = SAXHelper.newXMLReader();
+        xmlReader.setContentHandler(new SheetHandler(sheetIndex, sharedStrings, dateStyles, listener));
+        try {
+            xmlReader.parse(new InputSource(sheet));
+        }catch (SheetDone e){
+            //剩余的行不再需要
+        }
+    }
+
+    /**
+     * 样式表中的日期格式判断
+     * @param styles 样式表，为null时全部不是日期格式
+     * @return 样式序号是否为日期格式
+     */
+    private static IntPredicate dateStyles(StylesTable styles){
+        if(null == styles){
+            return styleIndex -> false;
+        }
+        return styleIndex -> {
+            if(styleIndex >= styles.getNumCellStyles()){
+                return false;
+            }
+            XSSFCellStyle style = styles.getStyleAt(styleIndex);
+            return DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+        };
+    }
+
+    /**
+     * 列号转换，A->0，AA->26
+     * @param ref 单元格引用，如B12
+     * @return 列号
+     */
+    static int columnIndex(String ref){
+        int column = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if(c < 'A' || c > 'Z'){
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    /**
+     * 共享字符串的SAX处理，按存放方式写入ArrayList或CompactSharedStrings
+     */
+    private static final class SharedStringsHandler extends DefaultHandler {
+
+        private final ExcelImportOption.StringStorage stringStorage;
+
+        private final StringBuilder value = new StringBuilder(64);
+
+        private List<String> strings;
+
+        private Consumer<StringBuilder> sink;
+
+        private boolean isText;
+
+        private boolean isPhonetic;
+
+        private SharedStringsHandler(ExcelImportOption.StringStorage stringStorage) {
+            this.stringStorage = stringStorage;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName){
+                case "sst":
+                    String count = attributes.getValue("uniqueCount");
+                    create(null == count ? 0 : Integer.parseInt(count));
+                    break;
+                case "si":
+                    value.setLength(0);
+                    break;
+                case "t":
+                    isText = !isPhonetic;
+                    break;
+                case "rPh":
+                    isPhonetic = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName){
+                case "si":
+                    if(null == sink){
+                        create(0);
+                    }
+                    sink.accept(value);
+                    break;
+                case "t":
+                    isText = false;
+                    break;
+                case "rPh":
+                    isPhonetic = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if(isText){
+                value.append(ch, start, length);
+            }
+        }
+
+        private void create(int expectedSize){
+            if(null != strings){
+                return;
+            }
+            if(ExcelImportOption.StringStorage.HEAP == stringStorage){
+                ArrayList<String> list = new ArrayList<>(expectedSize);
+                strings = list;
+                sink = text -> list.add(text.toString());
+            }else{
+                CompactSharedStrings compact = new CompactSharedStrings(ExcelImportOption.StringStorage.DISK == stringStorage, expectedSize);
+                strings = compact;
+                sink = compact::append;
+            }
+        }
+
+        private List<String> finish(){
+            if(null == strings){
+                return Collections.emptyList();
+            }
+            if(strings instanceof CompactSharedStrings){
+                ((CompactSharedStrings) strings).seal();
+            }
+            return strings;
+        }
+
+        private void close(){
+            if(strings instanceof CompactSharedStrings){
+                ((CompactSharedStrings) strings).close();
+            }
+        }
+    }
+
+    /**
+     * 提前结束单页解析的标识，不记录堆栈
+     */
+    private static final class SheetDone extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+
+        private SheetDone() {
+            super("页解析提前结束");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * 单页的SAX处理
+     */
+    private static final class SheetHandler extends DefaultHandler{
+
+        private final List<String> sharedStrings;
+
+        private final IntPredicate dateStyle;
+
+        private final StreamRowBuffer row;
+
+        /**
+         * 样式是否为日期格式的缓存，checked标识是否已经判断过
+         */
+        private final BitSet dateStyles = new BitSet();
+
+        private final BitSet checkedStyles = new BitSet();
+
+        private final StringBuilder value = new StringBuilder(64);
+
+        private int column = -1;
+
+        private String cellType;
+
+        private int cellStyle;
+
+        private boolean isValue;
+
+        /**
+         * 当前单元格不需要读取，只记录是否有值
+         */
+        private boolean skipped;
+
+        private boolean hasValue;
+
+        private SheetHandler(int sheetIndex, List<String> sharedStrings, IntPredicate dateStyle, IExcelRowListener listener) {
+            this.sharedStrings = sharedStrings;
+            this.dateStyle = dateStyle;
+            this.row = new StreamRowBuffer(sheetIndex, listener);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName){
+                case ROW:
+                    String r = attributes.getValue(ATTR_REF);
+                    row.start(null == r ? row.getRowNum() + 1 : Integer.parseInt(r) - 1);
+                    column = -1;
+                    break;
+                case CELL:
+                    String ref = attributes.getValue(ATTR_REF);
+                    column = null == ref ? column + 1 : columnIndex(ref);
+                    value.setLength(0);
+                    skipped = !row.wants(column);
+                    hasValue = false;
+                    if(skipped){
+                        break;
+                    }
+                    cellType = attributes.getValue(ATTR_TYPE);
+                    String style = attributes.getValue(ATTR_STYLE);
+                    cellStyle = null == style ? 0 : Integer.parseInt(style);
+                    break;
+                case VALUE:
+                case INLINE_TEXT:
+                    isValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if(isValue){
+                if(skipped){
+                    hasValue |= length > 0;
+                }else{
+                    value.append(ch, start, length);
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SheetDone {
+            switch (localName){
+                case VALUE:
+                case INLINE_TEXT:
+                    isValue = false;
+                    break;
+                case CELL:
+                    if(skipped){
+                        row.skip(hasValue);
+                    }else if(isNumericCell()){
+                        row.setNumeric(column, Double.parseDouble(value.toString()), isDateStyle(cellStyle));
+                    }else{
+                        row.set(column, cellValue());
+                    }
+                    break;
+                case ROW:
+                    row.end();
+                    if(row.isSheetDone()){
+                        throw new SheetDone();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * n类型或未标注类型的非空单元格为数字单元格
+         * @return 是否为数字单元格
+         */
+        private boolean isNumericCell(){
+            return value.length() != 0 && (null == cellType || "n".equals(cellType));
+        }
+
+        /**
+         * 根据单元格的类型获取其字符串值，数字单元格见isNumericCell
+         * @return 单元格的字符串值
+         */
+        private String cellValue(){
+            if(value.length() == 0){
+                return "";
+            }
+            switch (cellType){
+                case TYPE_SHARED:
+                    return sharedStrings.get(Integer.parseInt(value.toString()));
+                case TYPE_BOOLEAN:
+                    return String.valueOf('1' == value.charAt(0));
+                case TYPE_ERROR:
+                    return "";
+                case TYPE_INLINE:
+                    return value.toString();
+                default:
+                    //str类型公式字符串
+                    return value.toString();
+            }
+        }
+
+        private boolean isDateStyle(int styleIndex){
+            if(!checkedStyles.get(styleIndex)){
+                checkedStyles.set(styleIndex);
+                if(dateStyle.test(styleIndex)){
+                    dateStyles.set(styleIndex);
+                }
+            }
+            return dateStyles.get(styleIndex);
+        }
+    }
+}
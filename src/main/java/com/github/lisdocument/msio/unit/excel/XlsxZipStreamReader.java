@@ -0,0 +1,409 @@
+package com.github.lisdocument.msio.unit.excel;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Created with IntelliJ IDEA.
+ * xlsx的顺序流式读取，通过ZipInputStream按条目在流中的顺序读取，不需要先将整个文件读入内存或写入临时文件，
+ * 适合直接解析上传中的请求体，解析与网络传输同时进行
+ * 页的解析依赖[Content_Types].xml、workbook.xml及其关系、共享字符串与样式，依赖都已读到时页直接从流中解析，
+ * 否则（如Excel生成的文件中共享字符串位于页之后）该页先以gzip压缩暂存到临时文件，依赖读完后再解析，
+ * 页始终按工作簿中的顺序交给监听器，页码与XlsxStreamReader一致
+ * @author Libin
+ * @version 1.0.2
+ */
+final class XlsxZipStreamReader {
+
+    private static final String CONTENT_TYPES = "[Content_Types].xml";
+
+    private static final String RELATIONSHIP_NAMESPACE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private static final String WORKBOOK_CONTENT_TYPE_SUFFIX = ".main+xml";
+
+    private static final String RELS_SUFFIX = ".rels";
+
+    private static final String XML_SUFFIX = ".xml";
+
+    private final IExcelRowListener listener;
+
+    private final ExcelImportOption.StringStorage stringStorage;
+
+    /**
+     * 部件名（不含开头的/）到内容类型，读到[Content_Types].xml之前为null
+     */
+    private Map<String, String> contentTypes;
+
+    private String workbookPart;
+
+    /**
+     * workbook.xml中的页，依次为页名称及关系id
+     */
+    private final List<String[]> workbookSheets = new ArrayList<>();
+
+    /**
+     * 工作簿中的页对应的部件名，与sheetNames一一对应，读到工作簿的关系之前为null
+     */
+    private List<String> sheetParts;
+
+    private final List<String> sheetNames = new ArrayList<>();
+
+    private List<String> sharedStrings;
+
+    private IntPredicate dateStyles;
+
+    /**
+     * 暂存的条目，键为条目名称
+     */
+    private final Map<String, File> spooled = new LinkedHashMap<>();
+
+    /**
+     * 下一个交给监听器的页码
+     */
+    private int next;
+
+    /**
+     * @param listener 行监听器
+     * @param stringStorage 共享字符串表的存放方式
+     */
+    XlsxZipStreamReader(IExcelRowListener listener, ExcelImportOption.StringStorage stringStorage) {
+        this.listener = listener;
+        this.stringStorage = stringStorage;
+    }
+
+    /**
+     * 读取整个工作簿
+     * @param in xlsx的输入流，只会被顺序读取一次，不会被关闭
+     * @throws IOException 读取错误
+     * @throws SAXException xml解析错误
+     * @throws ParserConfigurationException xml解析器创建失败
+     */
+    void read(InputStream in) throws IOException, SAXException, ParserConfigurationException {
+        ZipInputStream zip = new ZipInputStream(in);
+        //SAX解析结束时会关闭输入，条目的流不能关闭整个zip
+        InputStream entryStream = new FilterInputStream(zip) {
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            ZipEntry entry;
+            //监听器不再需要更多的页时，之后的条目不再读取
+            while (!listener.isDone() && null != (entry = zip.getNextEntry())){
+                if(!entry.isDirectory()){
+                    accept(entry.getName(), entryStream);
+                }
+            }
+            finish();
+        }finally {
+            for (File file : spooled.values()) {
+                delete(file);
+            }
+            if(sharedStrings instanceof CompactSharedStrings){
+                ((CompactSharedStrings) sharedStrings).close();
+            }
+        }
+    }
+
+    /**
+     * 处理一个条目，依赖不足时暂存，处理后重新检查暂存的条目
+     */
+    private void accept(String name, InputStream stream) throws IOException, SAXException, ParserConfigurationException {
+        if(CONTENT_TYPES.equals(name)){
+            contentTypes = readContentTypes(stream);
+            replay();
+            return;
+        }
+        if(null == contentTypes){
+            if(name.endsWith(XML_SUFFIX) || name.endsWith(RELS_SUFFIX)){
+                spool(name, stream);
+            }
+            return;
+        }
+        String type = contentTypes.get(name);
+        if(isSheet(type)){
+            if(ready() && next < sheetParts.size() && name.equals(sheetParts.get(next))){
+                deliver(stream);
+                drain();
+            }else{
+                spool(name, stream);
+            }
+            return;
+        }
+        if(XSSFRelation.SHARED_STRINGS.getContentType().equals(type)){
+            sharedStrings = XlsxStreamReader.readSharedStrings(stream, stringStorage);
+        }else if(XSSFRelation.STYLES.getContentType().equals(type)){
+            dateStyles = readStyles(stream);
+        }else if(null == workbookPart && null != type && type.endsWith(WORKBOOK_CONTENT_TYPE_SUFFIX)){
+            workbookPart = name;
+            readWorkbook(stream);
+        }else if(name.endsWith(RELS_SUFFIX)){
+            if(null == workbookPart){
+                //此时还无法判断是否为工作簿的关系
+                spool(name, stream);
+                return;
+            }
+            if(!name.equals(relationshipsOf(workbookPart)) || null != sheetParts){
+                return;
+            }
+            readWorkbookRelationships(stream);
+        }else{
+            return;
+        }
+        replay();
+    }
+
+    /**
+     * 处理依赖已满足的暂存条目，之后按顺序交付已暂存的页
+     */
+    private void replay() throws IOException, SAXException, ParserConfigurationException {
+        if(null == contentTypes){
+            return;
+        }
+        for (String name : new ArrayList<>(spooled.keySet())) {
+            if(isSheet(contentTypes.get(name)) || (name.endsWith(RELS_SUFFIX) && null == workbookPart)){
+                continue;
+            }
+            File file = spooled.remove(name);
+            if(null == file){
+                //已在嵌套的replay中处理
+                continue;
+            }
+            try (InputStream in = openSpool(file)){
+                accept(name, in);
+            }finally {
+                delete(file);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 依赖满足时依次交付已暂存的页，遇到尚未读到的页时停止
+     */
+    private void drain() throws IOException, SAXException, ParserConfigurationException {
+        while (ready() && next < sheetParts.size()){
+            File file = spooled.remove(sheetParts.get(next));
+            if(null == file){
+                return;
+            }
+            try (InputStream in = openSpool(file)){
+                deliver(in);
+            }finally {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * 所有条目读完后，缺失的共享字符串及样式视为空，交付剩余的页
+     */
+    private void finish() throws IOException, SAXException, ParserConfigurationException {
+        if(null == contentTypes || null == sheetParts){
+            throw new IllegalArgumentException("文件格式不符合，无法加入");
+        }
+        if(null == sharedStrings){
+            sharedStrings = Collections.emptyList();
+        }
+        if(null == dateStyles){
+            dateStyles = styleIndex -> false;
+        }
+        drain();
+        if(next < sheetParts.size() && !listener.isDone()){
+            throw new IllegalArgumentException("文件格式不符合，无法加入");
+        }
+    }
+
+    private void deliver(InputStream sheet) throws IOException, SAXException, ParserConfigurationException {
+        int sheetIndex = next ++;
+        if(!listener.isDone() && listener.startSheet(sheetIndex, sheetNames.get(sheetIndex))){
+            XlsxStreamReader.readSheet(sheet, sheetIndex, sharedStrings, dateStyles, listener);
+            listener.endSheet(sheetIndex);
+        }
+    }
+
+    /**
+     * 页的解析所需的依赖是否都已读到，[Content_Types].xml中没有声明的共享字符串及样式不需要等待
+     */
+    private boolean ready(){
+        return null != sheetParts
+                && (null != sharedStrings || !contentTypes.containsValue(XSSFRelation.SHARED_STRINGS.getContentType()))
+                && (null != dateStyles || !contentTypes.containsValue(XSSFRelation.STYLES.getContentType()));
+    }
+
+    private static boolean isSheet(String contentType){
+        return XSSFRelation.WORKSHEET.getContentType().equals(contentType)
+                || XSSFRelation.CHARTSHEET.getContentType().equals(contentType);
+    }
+
+    private void spool(String name, InputStream stream) throws IOException {
+        File file = File.createTempFile("msio", ".gz");
+        File previous = spooled.put(name, file);
+        if(null != previous){
+            delete(previous);
+        }
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            IOUtils.copy(stream, out);
+        }
+    }
+
+    private static InputStream openSpool(File file) throws IOException {
+        return new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static void delete(File file){
+        if(!file.delete()){
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * 部件的关系所在的部件名，如xl/workbook.xml对应xl/_rels/workbook.xml.rels
+     */
+    private static String relationshipsOf(String part){
+        int index = part.lastIndexOf('/');
+        return part.substring(0, index + 1) + "_rels/" + part.substring(index + 1) + RELS_SUFFIX;
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler) throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = SAXHelper.newXMLReader();
+        xmlReader.setContentHandler(handler);
+        xmlReader.parse(new InputSource(in));
+    }
+
+    private static Map<String, String> readContentTypes(InputStream in) throws IOException, SAXException, ParserConfigurationException {
+        Map<String, String> contentTypes = new HashMap<>();
+        parse(in, new DefaultHandler(){
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if("Override".equals(localName)){
+                    String partName = attributes.getValue("PartName");
+                    if(null != partName){
+                        contentTypes.put(partName.startsWith("/") ? partName.substring(1) : partName, attributes.getValue("ContentType"));
+                    }
+                }
+            }
+        });
+        return contentTypes;
+    }
+
+    private void readWorkbook(InputStream in) throws IOException, SAXException, ParserConfigurationException {
+        parse(in, new DefaultHandler(){
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if("sheet".equals(localName)){
+                    workbookSheets.add(new String[]{attributes.getValue("name"), attributes.getValue(RELATIONSHIP_NAMESPACE, "id")});
+                }
+            }
+        });
+    }
+
+    /**
+     * 读取工作簿的关系，按workbook.xml中的顺序确定普通页及图表页对应的部件，与XSSFReader.SheetIterator一致
+     */
+    private void readWorkbookRelationships(InputStream in) throws IOException, SAXException, ParserConfigurationException {
+        Map<String, String> targets = new HashMap<>();
+        URI base = URI.create("/" + workbookPart);
+        parse(in, new DefaultHandler(){
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if(!"Relationship".equals(localName) || "External".equals(attributes.getValue("TargetMode"))){
+                    return;
+                }
+                String type = attributes.getValue("Type");
+                if(XSSFRelation.WORKSHEET.getRelation().equals(type) || XSSFRelation.CHARTSHEET.getRelation().equals(type)){
+                    targets.put(attributes.getValue("Id"), base.resolve(attributes.getValue("Target")).getPath().substring(1));
+                }
+            }
+        });
+        List<String> parts = new ArrayList<>(workbookSheets.size());
+        for (String[] sheet : workbookSheets) {
+            String target = targets.get(sheet[1]);
+            if(null != target){
+                sheetNames.add(sheet[0]);
+                parts.add(target);
+            }
+        }
+        sheetParts = parts;
+    }
+
+    /**
+     * 读取样式中的日期格式，只解析numFmts及cellXfs，判断方式与XSSFCellStyle一致
+     */
+    private static IntPredicate readStyles(InputStream in) throws IOException, SAXException, ParserConfigurationException {
+        BitSet dates = new BitSet();
+        parse(in, new DefaultHandler(){
+
+            private final Map<Integer, String> formats = new HashMap<>();
+
+            private boolean isCellXfs;
+
+            private int xfIndex;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                switch (localName){
+                    case "numFmt":
+                        formats.put(Integer.parseInt(attributes.getValue("numFmtId")), attributes.getValue("formatCode"));
+                        break;
+                    case "cellXfs":
+                        isCellXfs = true;
+                        break;
+                    case "xf":
+                        if(isCellXfs){
+                            String id = attributes.getValue("numFmtId");
+                            int formatId = null == id ? 0 : Integer.parseInt(id);
+                            String format = formats.containsKey(formatId) ? formats.get(formatId) : BuiltinFormats.getBuiltinFormat(formatId);
+                            if(null != format && DateUtil.isADateFormat(formatId, format)){
+                                dates.set(xfIndex);
+                            }
+                            xfIndex ++;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                if("cellXfs".equals(localName)){
+                    isCellXfs = false;
+                }
+            }
+        });
+        return dates::get;
+    }
+}
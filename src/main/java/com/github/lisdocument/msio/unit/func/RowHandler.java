@@ -0,0 +1,19 @@
+package com.github.lisdocument.msio.unit.func;
+
+/**
+ * 导入时的逐行处理程序，流式导入时每转换完一行即回调一次，处理后该行不会被保留，
+ * 适合边解析边入库的场景，整个文件的数据不会同时驻留在内存中
+ * @author Libin
+ * @version 1.0.2
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+
+    /**
+     * 处理方法，抛出的异常会中断整个导入
+     * @param sheetIndex 页码
+     * @param rowNum 行号，从0开始，与excel中的行一致
+     * @param row 转换后的对象，无映射时为Map
+     */
+    void handle(int sheetIndex, int rowNum, T row);
+}
@@ -0,0 +1,180 @@
+package com.github.lisdocument.msio.utils;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 导入使用的日期解析器，备选格式预先编译为不可变的DateTimeFormatter，可在多线程中共用，
+ * 记住上一次匹配成功的格式并优先尝试，每列使用一个实例时同一列的日期通常只需尝试一次，
+ * 解析失败不打印日志，仅计数并记录第一条失败的数据，由调用方在一页或一次导入结束后汇总输出，
+ * 实例应随导入创建，不要在多次导入之间共用；不需要计数时使用静态的parseOnce
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class DateParser {
+
+    /**
+     * 备选格式，月、日、时、分、秒均可以为一位或两位数字，需要完整匹配
+     */
+    private static final String[] PATTERNS = {
+            "uuuu-M-d H:m:s",
+            "uuuu-M-d",
+            "uuuu-M-d H:m",
+            "uuuu-M-d H",
+            "uuuu/M/d H:m:s",
+            "uuuu/M/d",
+            "uuuu/M/d H:m",
+            "uuuu/M/d H",
+            "uuuu年M月d日 H时m分s秒",
+            "uuuu年M月d日 H时",
+            "uuuu年M月d日",
+            "uuuu年M月",
+            //MsUtils.getStringValueFromCell输出的日期格式
+            "M/d/uuuu"
+    };
+
+    private static final DateTimeFormatter[] FORMATTERS = new DateTimeFormatter[PATTERNS.length];
+
+    static {
+        for (int i = 0; i < PATTERNS.length; i++) {
+            FORMATTERS[i] = DateTimeFormatter.ofPattern(PATTERNS[i]);
+        }
+    }
+
+    /**
+     * 上一次匹配成功的格式下标，多线程下读到旧值只会多尝试几次
+     */
+    private volatile int hint;
+
+    private final LongAdder parsed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private volatile String firstFailure;
+
+    /**
+     * 解析为LocalDateTime
+     * @param data 待转换的数据
+     * @return 转换结果，为空或者无法识别时返回null
+     */
+    public LocalDateTime parseLocalDateTime(String data){
+        if(null == data){
+            return null;
+        }
+        String text = data.trim();
+        if(text.isEmpty()){
+            return null;
+        }
+        int first = hint;
+        LocalDateTime result = tryParse(FORMATTERS[first], text);
+        if(null != result){
+            parsed.increment();
+            return result;
+        }
+        for (int i = 0; i < FORMATTERS.length; i++) {
+            if(i == first){
+                continue;
+            }
+            result = tryParse(FORMATTERS[i], text);
+            if(null != result){
+                hint = i;
+                parsed.increment();
+                return result;
+            }
+        }
+        failed.increment();
+        if(null == firstFailure){
+            firstFailure = text;
+        }
+        return null;
+    }
+
+    /**
+     * 不记录格式及计数的单次解析，依次尝试全部备选格式
+     * @param data 待转换的数据
+     * @return 转换结果，为空或者无法识别时返回null
+     */
+    public static LocalDateTime parseOnce(String data){
+        if(null == data){
+            return null;
+        }
+        String text = data.trim();
+        if(text.isEmpty()){
+            return null;
+        }
+        for (DateTimeFormatter formatter : FORMATTERS) {
+            LocalDateTime result = tryParse(formatter, text);
+            if(null != result){
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析为Date，使用系统默认时区
+     * @param data 待转换的数据
+     * @return 转换结果，为空或者无法识别时返回null
+     */
+    public Date parse(String data){
+        LocalDateTime dateTime = parseLocalDateTime(data);
+        return null == dateTime ? null : Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * @return 解析成功的次数
+     */
+    public long getParsed() {
+        return parsed.sum();
+    }
+
+    /**
+     * @return 无法识别的次数
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 第一条无法识别的数据，没有失败时为null
+     */
+    public String getFirstFailure() {
+        return firstFailure;
+    }
+
+    /**
+     * 不抛出异常的解析，避免逐条创建异常对象的开销，只解析字段不经过DateTimeFormatter的解析规则，
+     * 缺少的日、时、分、秒按最小值补齐，不存在的日期（如2月30日）视为不匹配
+     * @param formatter 格式
+     * @param text 待转换的数据
+     * @return 转换结果，不匹配返回null
+     */
+    private static LocalDateTime tryParse(DateTimeFormatter formatter, String text){
+        ParsePosition position = new ParsePosition(0);
+        TemporalAccessor fields = formatter.parseUnresolved(text, position);
+        if(null == fields || position.getErrorIndex() >= 0 || position.getIndex() != text.length()){
+            return null;
+        }
+        try {
+            return LocalDateTime.of((int) fields.getLong(ChronoField.YEAR),
+                    (int) fields.getLong(ChronoField.MONTH_OF_YEAR),
+                    field(fields, ChronoField.DAY_OF_MONTH, 1),
+                    field(fields, ChronoField.HOUR_OF_DAY, 0),
+                    field(fields, ChronoField.MINUTE_OF_HOUR, 0),
+                    field(fields, ChronoField.SECOND_OF_MINUTE, 0));
+        }catch (DateTimeException e){
+            return null;
+        }
+    }
+
+    private static int field(TemporalAccessor fields, ChronoField field, int defaultValue){
+        return fields.isSupported(field) ? (int) fields.getLong(field) : defaultValue;
+    }
+}
@@ -0,0 +1,286 @@
+package com.github.lisdocument.msio.utils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 导入使用的类访问器，每个类在映射注册时生成一次，
+ * setter通过LambdaMetafactory生成直接调用的函数对象，按下标访问，int/long/double/boolean提供不装箱的专用setter，
+ * 类或方法不可见（非public、不同的类加载器）时退化为预先解析的反射方法调用
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class ImportAccessor {
+
+    private static final Log log = LogFactory.getLog(ImportAccessor.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<?> clazz;
+
+    private final Supplier<Object> constructor;
+
+    /**
+     * setter的方法名与参数类型，下标即访问器中的下标
+     */
+    private final String[] names;
+
+    private final Class<?>[] types;
+
+    private final BiConsumer<Object, Object>[] setters;
+
+    private final Object[] primitiveSetters;
+
+    /**
+     * 方法名到下标的索引，仅在生成绑定计划时使用
+     */
+    private final Map<String, List<Integer>> nameIndex;
+
+    /**
+     * 生成类的访问器
+     * @param clazz 需要导入的类
+     */
+    @SuppressWarnings("unchecked")
+    public ImportAccessor(Class<?> clazz) {
+        this.clazz = clazz;
+        boolean direct = isDirectAccessible(clazz);
+        List<Method> methods = new ArrayList<>();
+        for (Method method : clazz.getMethods()) {
+            if(method.getName().startsWith("set") && method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers())){
+                methods.add(method);
+            }
+        }
+        int size = methods.size();
+        this.names = new String[size];
+        this.types = new Class<?>[size];
+        this.setters = (BiConsumer<Object, Object>[]) new BiConsumer<?, ?>[size];
+        this.primitiveSetters = new Object[size];
+        this.nameIndex = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            Method method = methods.get(i);
+            names[i] = method.getName();
+            types[i] = method.getParameterTypes()[0];
+            nameIndex.computeIfAbsent(names[i], k -> new ArrayList<>(1)).add(i);
+            if(direct){
+                try {
+                    generate(i, method);
+                    continue;
+                }catch (Throwable e){
+                    log.error("生成" + clazz.getName() + "." + method.getName() + "的访问器失败，使用反射方式访问");
+                }
+            }
+            fallback(i, method);
+        }
+        this.constructor = constructor(clazz, direct);
+    }
+
+    /**
+     * 查找字段对应的setter下标，优先使用参数类型一致的setter
+     * @param fieldName 字段名
+     * @param type 字段类型，可以为null
+     * @return 下标，找不到返回-1
+     */
+    public int indexOf(String fieldName, Class<?> type){
+        String methodName = "set" + fieldName.substring(0,1).toUpperCase() + fieldName.substring(1);
+        List<Integer> indexes = nameIndex.get(methodName);
+        if(null == indexes){
+            return -1;
+        }
+        for (Integer index : indexes) {
+            if(types[index] == type){
+                return index;
+            }
+        }
+        return indexes.get(0);
+    }
+
+    public Class<?> getClazz() {
+        return clazz;
+    }
+
+    /**
+     * @param index setter下标
+     * @return setter的参数类型
+     */
+    public Class<?> getType(int index){
+        return types[index];
+    }
+
+    /**
+     * 通过无参构造创建对象
+     * @return 新的对象
+     */
+    public Object newInstance(){
+        if(null == constructor){
+            throw new IllegalStateException(clazz.getName() + "创建失败，请检查是否存在无参构造函数或者是否设置构造函数为non-private");
+        }
+        return constructor.get();
+    }
+
+    /**
+     * 赋值，基本类型的setter传入null时保持默认值
+     * @param target 对象
+     * @param index setter下标
+     * @param value 值
+     */
+    public void set(Object target, int index, Object value){
+        if(null == value && types[index].isPrimitive()){
+            return;
+        }
+        setters[index].accept(target, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setInt(Object target, int index, int value){
+        ((ObjIntConsumer<Object>) primitiveSetters[index]).accept(target, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setLong(Object target, int index, long value){
+        ((ObjLongConsumer<Object>) primitiveSetters[index]).accept(target, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setDouble(Object target, int index, double value){
+        ((ObjDoubleConsumer<Object>) primitiveSetters[index]).accept(target, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void setBoolean(Object target, int index, boolean value){
+        ((ObjBooleanConsumer<Object>) primitiveSetters[index]).accept(target, value);
+    }
+
+    /**
+     * 只有public类且目标类对当前类加载器可见时才能生成直接调用
+     * @param clazz 类
+     * @return 是否可以生成
+     */
+    private static boolean isDirectAccessible(Class<?> clazz){
+        if(!Modifier.isPublic(clazz.getModifiers())){
+            return false;
+        }
+        try {
+            return Class.forName(clazz.getName(), false, ImportAccessor.class.getClassLoader()) == clazz;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void generate(int index, Method method) throws Throwable {
+        MethodHandle handle = LOOKUP.unreflect(method);
+        Class<?> type = types[index];
+        setters[index] = (BiConsumer<Object, Object>) lambda(handle, BiConsumer.class,
+                MethodType.methodType(void.class, Object.class, Object.class),
+                MethodType.methodType(void.class, clazz, MethodType.methodType(type).wrap().returnType()));
+        if(type == int.class){
+            primitiveSetters[index] = lambda(handle, ObjIntConsumer.class,
+                    MethodType.methodType(void.class, Object.class, int.class), MethodType.methodType(void.class, clazz, int.class));
+        }else if(type == long.class){
+            primitiveSetters[index] = lambda(handle, ObjLongConsumer.class,
+                    MethodType.methodType(void.class, Object.class, long.class), MethodType.methodType(void.class, clazz, long.class));
+        }else if(type == double.class){
+            primitiveSetters[index] = lambda(handle, ObjDoubleConsumer.class,
+                    MethodType.methodType(void.class, Object.class, double.class), MethodType.methodType(void.class, clazz, double.class));
+        }else if(type == boolean.class){
+            primitiveSetters[index] = lambda(handle, ObjBooleanConsumer.class,
+                    MethodType.methodType(void.class, Object.class, boolean.class), MethodType.methodType(void.class, clazz, boolean.class));
+        }
+    }
+
+    private void fallback(int index, Method method){
+        method.setAccessible(true);
+        setters[index] = (target, value) -> invoke(method, target, value);
+        Class<?> type = types[index];
+        if(type == int.class){
+            primitiveSetters[index] = (ObjIntConsumer<Object>) (target, value) -> invoke(method, target, value);
+        }else if(type == long.class){
+            primitiveSetters[index] = (ObjLongConsumer<Object>) (target, value) -> invoke(method, target, value);
+        }else if(type == double.class){
+            primitiveSetters[index] = (ObjDoubleConsumer<Object>) (target, value) -> invoke(method, target, value);
+        }else if(type == boolean.class){
+            primitiveSetters[index] = (ObjBooleanConsumer<Object>) (target, value) -> invoke(method, target, value);
+        }
+    }
+
+    private static void invoke(Method method, Object target, Object value){
+        try {
+            method.invoke(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    private Object lambda(MethodHandle handle, Class<?> functionType, MethodType samType, MethodType instantiatedType) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(LOOKUP, samName(functionType), MethodType.methodType(functionType),
+                samType, handle, instantiatedType);
+        return site.getTarget().invoke();
+    }
+
+    private static String samName(Class<?> functionType){
+        return functionType == Supplier.class ? "get" : "accept";
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<Object> constructor(Class<?> clazz, boolean direct){
+        Constructor<?> declared;
+        try {
+            declared = clazz.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        if(direct && Modifier.isPublic(declared.getModifiers())){
+            try {
+                return (Supplier<Object>) lambda(LOOKUP.unreflectConstructor(declared), Supplier.class,
+                        MethodType.methodType(Object.class), MethodType.methodType(clazz));
+            } catch (Throwable e){
+                log.error("生成" + clazz.getName() + "的构造访问器失败，使用反射方式创建");
+            }
+        }
+        declared.setAccessible(true);
+        return () -> {
+            try {
+                return declared.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(clazz.getName() + "创建失败，请检查是否存在无参构造函数或者是否设置构造函数为non-private", e);
+            }
+        };
+    }
+
+    /**
+     * boolean专用的setter，JDK中没有对应的函数式接口
+     * @param <T> 对象类型
+     */
+    @FunctionalInterface
+    public interface ObjBooleanConsumer<T> {
+
+        /**
+         * 赋值
+         * @param t 对象
+         * @param value 值
+         */
+        void accept(T t, boolean value);
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.lisdocument.msio.utils;
+
+import java.util.Arrays;
+
+/**
+ * long的开放寻址哈希集合，线性探测，元素直接存放在long数组中，不会创建Long对象，
+ * 每个元素约占用8 / 负载因子字节，0作为空槽标识，集合中的0单独记录
+ * 要求元素本身已经是分布均匀的哈希值（如指纹），不再二次散列
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class LongHashSet {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * 元素数达到容量的该比例时扩容
+     */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] table;
+
+    private int mask;
+
+    private int size;
+
+    private int threshold;
+
+    private boolean hasZero;
+
+    public LongHashSet() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计的元素数，扩容前可以容纳的元素数不小于该值
+     */
+    public LongHashSet(int expectedSize) {
+        if(expectedSize < 0){
+            throw new IllegalArgumentException("expectedSize必须不小于0");
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * 加入元素
+     * @param value 元素
+     * @return 集合中原先不存在该元素时为true
+     */
+    public boolean add(long value){
+        if(0 == value){
+            if(hasZero){
+                return false;
+            }
+            hasZero = true;
+            size ++;
+            return true;
+        }
+        int index = (int) value & mask;
+        long current;
+        while (0 != (current = table[index])){
+            if(current == value){
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        if(++ size > threshold){
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * @param value 元素
+     * @return 是否包含该元素
+     */
+    public boolean contains(long value){
+        if(0 == value){
+            return hasZero;
+        }
+        int index = (int) value & mask;
+        long current;
+        while (0 != (current = table[index])){
+            if(current == value){
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return 0 == size;
+    }
+
+    /**
+     * 清空集合并收缩到默认容量
+     */
+    public void clear(){
+        allocate(DEFAULT_CAPACITY);
+        size = 0;
+        hasZero = false;
+    }
+
+    /**
+     * @return 集合中的元素，按有符号long升序排列
+     */
+    public long[] toSortedArray(){
+        long[] values = new long[size];
+        int count = 0;
+        if(hasZero){
+            count ++;
+        }
+        for (long value : table) {
+            if(0 != value){
+                values[count ++] = value;
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * @return 槽数组占用的字节数
+     */
+    public long memoryBytes(){
+        return (long) table.length << 3;
+    }
+
+    /**
+     * 槽数组不超过指定字节数时最多可以容纳的元素数，达到该元素数之前不会扩容到更大的槽数组
+     * @param memoryBytes 字节数
+     * @return 元素数
+     */
+    static int maxSizeWithin(long memoryBytes){
+        long capacity = Long.highestOneBit(Math.max(memoryBytes >> 3, DEFAULT_CAPACITY));
+        return (int) (Math.min(capacity, 1 << 30) * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize){
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+        if(needed > 1 << 30){
+            throw new IllegalArgumentException("元素数超出LongHashSet的容量");
+        }
+        return Math.max(16, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    private void allocate(int capacity){
+        table = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity){
+        if(capacity > 1 << 30){
+            throw new IllegalStateException("元素数超出LongHashSet的容量");
+        }
+        long[] old = table;
+        allocate(capacity);
+        for (long value : old) {
+            if(0 != value){
+                int index = (int) value & mask;
+                while (0 != table[index]){
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.lisdocument.msio.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 单页合并单元格的索引，创建时通过getMergedRegions一次性读取全部合并区域（XSSF中逐个getMergedRegion的开销很大），
+ * 按列分桶，每列以区域的起始行为键存放于TreeMap中，
+ * 同一列中的合并区域互不重叠，查找(row, column)所在区域只需在该列中取起始行不大于row的最后一个区域，为O(log n)，
+ * 导出时通过add在O(宽度 * log n)内完成重叠检查后调用addMergedRegionUnsafe，避免POI每次合并都遍历全部已有区域
+ * 索引不是线程安全的，只反映创建之后通过add加入的区域
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class MergedRegionIndex {
+
+    private final Sheet sheet;
+
+    /**
+     * 下标为列号，元素为该列中起始行到区域的映射，没有区域的列为null
+     */
+    private final List<TreeMap<Integer, Entry>> columns = new ArrayList<>();
+
+    private int size;
+
+    private MergedRegionIndex(Sheet sheet) {
+        this.sheet = sheet;
+    }
+
+    /**
+     * 建立页的合并单元格索引
+     * @param sheet 页
+     * @return 索引
+     */
+    public static MergedRegionIndex of(Sheet sheet){
+        MergedRegionIndex index = new MergedRegionIndex(sheet);
+        List<CellRangeAddress> regions = sheet.getMergedRegions();
+        for (CellRangeAddress region : regions) {
+            //已有文件中可能存在重叠的区域，与逐个遍历时一致，保留先出现的区域
+            if(null == index.find(region)){
+                index.put(region, index.size);
+            }
+            index.size ++;
+        }
+        return index;
+    }
+
+    /**
+     * 查找单元格所在的合并区域
+     * @param row 行号
+     * @param column 列号
+     * @return 合并区域，未合并返回null
+     */
+    public CellRangeAddress get(int row, int column){
+        Entry entry = entry(row, column);
+        return null == entry ? null : entry.region;
+    }
+
+    /**
+     * 查找单元格所在的合并区域在页中的下标，与MsUtils.isMergedRegion的返回值一致
+     * @param row 行号
+     * @param column 列号
+     * @return 合并区域下标，未合并返回-1
+     */
+    public int indexOf(int row, int column){
+        Entry entry = entry(row, column);
+        return null == entry ? -1 : entry.index;
+    }
+
+    /**
+     * 单元格是否被合并区域覆盖且不是区域的左上角，这样的单元格在excel中不显示
+     * @param row 行号
+     * @param column 列号
+     * @return 是否被隐藏
+     */
+    public boolean isHidden(int row, int column){
+        CellRangeAddress region = get(row, column);
+        return null != region && (region.getFirstRow() != row || region.getFirstColumn() != column);
+    }
+
+    /**
+     * 获取单元格显示的值，合并区域内的单元格取区域左上角的值
+     * @param row 行号
+     * @param column 列号
+     * @return 单元格的字符串值，与MsUtils.getStringValueFromCell一致
+     */
+    public String getValue(int row, int column){
+        CellRangeAddress region = get(row, column);
+        if(null != region){
+            row = region.getFirstRow();
+            column = region.getFirstColumn();
+        }
+        Row sheetRow = sheet.getRow(row);
+        Cell cell = null == sheetRow ? null : sheetRow.getCell(column);
+        return MsUtils.getStringValueFromCell(cell);
+    }
+
+    /**
+     * 合并单元格，重叠检查使用索引完成，之后以addMergedRegionUnsafe加入页中
+     * @param region 合并区域
+     * @return 合并区域在页中的下标
+     * @throws IllegalStateException 与已有的合并区域重叠
+     */
+    public int add(CellRangeAddress region){
+        CellRangeAddress exists = find(region);
+        if(null != exists){
+            throw new IllegalStateException("合并区域" + region.formatAsString() + "与已有的合并区域" + exists.formatAsString() + "重叠");
+        }
+        //XSSF与HSSF中addMergedRegionUnsafe的返回值不一致，下标以加入前的区域数为准
+        int index = sheet.getNumMergedRegions();
+        sheet.addMergedRegionUnsafe(region);
+        put(region, index);
+        size ++;
+        return index;
+    }
+
+    /**
+     * @return 索引中的合并区域数
+     */
+    public int size(){
+        return size;
+    }
+
+    private Entry entry(int row, int column){
+        if(column < 0 || column >= columns.size()){
+            return null;
+        }
+        TreeMap<Integer, Entry> regions = columns.get(column);
+        if(null == regions){
+            return null;
+        }
+        Map.Entry<Integer, Entry> floor = regions.floorEntry(row);
+        return null == floor || floor.getValue().region.getLastRow() < row ? null : floor.getValue();
+    }
+
+    /**
+     * 查找与区域重叠的已有区域，每列中与区域重叠的只可能是起始行不大于区域最后一行的最后一个区域
+     */
+    private CellRangeAddress find(CellRangeAddress region){
+        int last = Math.min(region.getLastColumn(), columns.size() - 1);
+        for (int column = region.getFirstColumn(); column <= last; column++) {
+            TreeMap<Integer, Entry> regions = columns.get(column);
+            if(null == regions){
+                continue;
+            }
+            Map.Entry<Integer, Entry> floor = regions.floorEntry(region.getLastRow());
+            if(null != floor && floor.getValue().region.getLastRow() >= region.getFirstRow()){
+                return floor.getValue().region;
+            }
+        }
+        return null;
+    }
+
+    private void put(CellRangeAddress region, int index){
+        Entry entry = new Entry(region, index);
+        while (columns.size() <= region.getLastColumn()){
+            columns.add(null);
+        }
+        for (int column = region.getFirstColumn(); column <= region.getLastColumn(); column++) {
+            TreeMap<Integer, Entry> regions = columns.get(column);
+            if(null == regions){
+                regions = new TreeMap<>();
+                columns.set(column, regions);
+            }
+            regions.put(region.getFirstRow(), entry);
+        }
+    }
+
+    private static final class Entry {
+
+        private final CellRangeAddress region;
+
+        private final int index;
+
+        private Entry(CellRangeAddress region, int index) {
+            this.region = region;
+            this.index = index;
+        }
+    }
+}
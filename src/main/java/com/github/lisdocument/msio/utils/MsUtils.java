@@ -1,10 +1,14 @@
 package com.github.lisdocument.msio.utils;
 
 import com.github.lisdocument.msio.config.MsIoContainer;
+import com.github.lisdocument.msio.unit.excel.ExcelFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.poi.hssf.usermodel.HSSFDateUtil;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.XSSFCell;
@@ -13,13 +17,18 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -32,6 +41,13 @@ public class MsUtils {
 
     public static final Log log = LogFactory.getLog(MsUtils.class);
 
+    /**
+     * 单元格字符串化使用的格式化工具，非线程安全，按线程复用
+     */
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("MM/dd/yyyy"));
+
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("#.#"));
+
     /**
      * 文件名中文输出方法修改
      * @param s 带转换的文件名称
@@ -73,18 +89,165 @@ public class MsUtils {
         return result;
     }
 
+    /**
+     * ole2（xls）文件头
+     */
+    private static final byte[] OLE2_HEADER = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+
+    /**
+     * zip（xlsx）文件头
+     */
+    private static final byte[] ZIP_HEADER = {0x50, 0x4B, 0x03, 0x04};
+
+    /**
+     * 根据文件头判断excel的格式
+     * @param header 文件开头的字节，至少8位
+     * @return 格式，无法识别返回null
+     */
+    public static ExcelFactory.ExcelDealType detectType(byte[] header){
+        if(startsWith(header, OLE2_HEADER)){
+            return ExcelFactory.ExcelDealType.XLS;
+        }
+        if(startsWith(header, ZIP_HEADER)){
+            return ExcelFactory.ExcelDealType.XLSX;
+        }
+        return null;
+    }
+
+    /**
+     * 根据文件头判断excel的格式，读取后流会被重置到开头
+     * @param in 输入流，必须支持mark
+     * @return 格式，无法识别返回null
+     * @throws IOException 读取错误
+     */
+    public static ExcelFactory.ExcelDealType detectType(InputStream in) throws IOException {
+        if(!in.markSupported()){
+            throw new IllegalArgumentException("判断文件格式需要支持mark的流，请使用BufferedInputStream包装");
+        }
+        in.mark(OLE2_HEADER.length);
+        byte[] header = new byte[OLE2_HEADER.length];
+        int length = 0;
+        try {
+            while (length < header.length){
+                int read = in.read(header, length, header.length - length);
+                if(read == -1){
+                    break;
+                }
+                length += read;
+            }
+        }finally {
+            in.reset();
+        }
+        return detectType(header);
+    }
+
+    /**
+     * 根据文件头判断excel的格式
+     * @param file 文件
+     * @return 格式，无法识别返回null
+     * @throws IOException 读取错误
+     */
+    public static ExcelFactory.ExcelDealType detectType(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), OLE2_HEADER.length)){
+            return detectType(in);
+        }
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix){
+        if(data.length < prefix.length){
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if(data[i] != prefix[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将输入流转换为Workbook示例，根据文件头选择解析方式，流只会被读取一次
+     * @param in 输入流，读取完毕后不会被关闭
+     * @return excel文本实体
+     * @throws IOException 读取错误
+     */
+    public static Workbook transWorkbook(InputStream in) throws IOException {
+        InputStream stream = in.markSupported() ? in : new BufferedInputStream(in);
+        ExcelFactory.ExcelDealType type = detectType(stream);
+        if(ExcelFactory.ExcelDealType.XLSX == type){
+            return new XSSFWorkbook(stream);
+        }
+        if(ExcelFactory.ExcelDealType.XLS == type){
+            return new HSSFWorkbook(stream);
+        }
+        throw new IllegalArgumentException("文件不是xls或者xlsx格式");
+    }
+
+    /**
+     * 从文件中读取Workbook，通过流读取，返回的Workbook可以修改后写出，与文件不再关联；只读取数据时使用transWorkbookReadOnly(File)
+     * @param file 文件
+     * @return excel文本实体
+     */
     public static Workbook transWorkbook(File file){
-        Workbook workbook;
+        try (InputStream in = new FileInputStream(file)){
+            return transWorkbook(in);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
+    }
+
+    /**
+     * 从文件中读取只用于读取的Workbook，xlsx通过OPCPackage.open(File)按需读取zip中的条目，xls通过NPOIFSFileSystem(File)按块读取，
+     * 不会先将整个文件复制到内存中，两种格式的Workbook都在创建时解析完全部页，文件句柄在返回前释放，
+     * 返回的Workbook不能写出，需要修改后写出时使用transWorkbook(File)
+     * @param file 文件
+     * @return excel文本实体
+     */
+    public static Workbook transWorkbookReadOnly(File file){
+        ExcelFactory.ExcelDealType type;
         try {
-            workbook = new XSSFWorkbook(new FileInputStream(file));
-        }catch (Exception e){
+            type = detectType(file);
+        }catch (IOException e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
+        if(ExcelFactory.ExcelDealType.XLSX == type){
+            OPCPackage pkg = null;
             try {
-                workbook = new HSSFWorkbook(new FileInputStream(file));
-            }catch (Exception e1){
-                throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e1);
+                pkg = OPCPackage.open(file, PackageAccess.READ);
+                return new XSSFWorkbook(pkg);
+            }catch (Exception e){
+                throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+            }finally {
+                if(null != pkg){
+                    //只读打开的包使用revert关闭，close会尝试保存
+                    pkg.revert();
+                }
+            }
+        }
+        if(ExcelFactory.ExcelDealType.XLS == type){
+            try (NPOIFSFileSystem fs = new NPOIFSFileSystem(file, true)){
+                return new HSSFWorkbook(fs.getRoot(), false);
+            }catch (Exception e){
+                throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
             }
         }
-        return workbook;
+        throw new IllegalArgumentException("文件不是xls或者xlsx格式");
+    }
+
+    /**
+     * 将文件转换为Workbook示例，默认文件系统中的文件与transWorkbook(File)一致，其余文件系统（如zip中的文件）通过流读取
+     * @param path 文件路径
+     * @return excel文本实体
+     */
+    public static Workbook transWorkbook(Path path){
+        if(path.getFileSystem() == FileSystems.getDefault()){
+            return transWorkbook(path.toFile());
+        }
+        try (InputStream in = Files.newInputStream(path)){
+            return transWorkbook(in);
+        }catch (Exception e){
+            throw new IllegalArgumentException("文件不存在或格式不匹配，检查后重试",e);
+        }
     }
 
     /**
@@ -129,29 +292,24 @@ public class MsUtils {
      */
 
     public static Workbook transWorkbook(MultipartFile file){
-        Workbook workbook;
-        try {
-            workbook = new XSSFWorkbook(file.getInputStream());
+        try (InputStream in = file.getInputStream()){
+            return transWorkbook(in);
         }catch (Exception e){
-            try{
-                workbook = new HSSFWorkbook(file.getInputStream());
-            }catch (Exception e1){
-                throw new IllegalArgumentException("文件格式不符合，无法加入",e1);
-            }
+            throw new IllegalArgumentException("文件格式不符合，无法加入",e);
         }
-        return workbook;
     }
+
     /**
-     * 判断指定的单元格是否是合并单元格
+     * 判断指定的单元格是否是合并单元格，每次调用都会遍历全部合并区域，同一页需要多次判断时使用MergedRegionIndex
      * @param row 行下标
      * @param column 列下标
      * @param sheet 工作簿实体
      * @return 合并单元格制式id
      */
     public static int isMergedRegion(int row , int column, Sheet sheet) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress range = sheet.getMergedRegion(i);
+        List<CellRangeAddress> regions = sheet.getMergedRegions();
+        for (int i = 0; i < regions.size(); i++) {
+            CellRangeAddress range = regions.get(i);
             int firstColumn = range.getFirstColumn();
             int lastColumn = range.getLastColumn();
             int firstRow = range.getFirstRow();
@@ -178,6 +336,23 @@ public class MsUtils {
      */
     public static void mergeAndCenteredCell(Sheet sheet,String value, int startRowNo, int endRowNo,
                                                 int startColumnNo, int endColumnNo,boolean isCover,boolean isTitle){
+        mergeAndCenteredCell(sheet, null, value, startRowNo, endRowNo, startColumnNo, endColumnNo, isCover, isTitle);
+    }
+
+    /**
+     * 合并单元格,默认居中处理，重叠检查通过合并单元格索引完成，大量合并时不再逐个遍历已有区域
+     * @param sheet 工作簿实体
+     * @param regions 当前页的合并单元格索引，为null时使用POI的addMergedRegion
+     * @param value 单元格需要填入数据
+     * @param startRowNo 开始行
+     * @param endRowNo 结束行/包括
+     * @param startColumnNo 开始列
+     * @param endColumnNo 结束列/包括
+     * @param isCover 是否覆盖 ，true会删除之前的数据，false若是之前有数据会进行拼接放入，value会被无视
+     * @param isTitle 是否标题，标题格式会被处理,true为标题
+     */
+    public static void mergeAndCenteredCell(Sheet sheet, MergedRegionIndex regions, String value, int startRowNo, int endRowNo,
+                                            int startColumnNo, int endColumnNo,boolean isCover,boolean isTitle){
         //处理单个单元格的情况，但是为了统一使用该方法
         if(startColumnNo == endColumnNo && startRowNo == endRowNo){
             createOrGetCell(sheet,startRowNo,startColumnNo).setCellValue(value);
@@ -195,7 +370,12 @@ public class MsUtils {
                 }
             }
         }
-        sheet.addMergedRegion(new CellRangeAddress(startRowNo,endRowNo,startColumnNo,endColumnNo));
+        CellRangeAddress region = new CellRangeAddress(startRowNo,endRowNo,startColumnNo,endColumnNo);
+        if(null == regions){
+            sheet.addMergedRegion(region);
+        }else{
+            regions.add(region);
+        }
         Cell orGetCell = createOrGetCell(sheet, startRowNo, startColumnNo);
         Workbook workbook = sheet.getWorkbook();
         CellStyle cellStyle = workbook.createCellStyle();
@@ -259,8 +439,6 @@ public class MsUtils {
      * @return 读取到的数据
      */
     public static String getStringValueFromCell(Cell cell) {
-        SimpleDateFormat sFormat = new SimpleDateFormat("MM/dd/yyyy");
-        DecimalFormat decimalFormat = new DecimalFormat("#.#");
         String cellValue = "";
         if(cell == null) {
             return cellValue;
@@ -270,14 +448,7 @@ public class MsUtils {
         }
 
         else if(cell.getCellType() == XSSFCell.CELL_TYPE_NUMERIC) {
-            if(HSSFDateUtil.isCellDateFormatted(cell)) {
-                double d = cell.getNumericCellValue();
-                Date date = HSSFDateUtil.getJavaDate(d);
-                cellValue = sFormat.format(date);
-            }
-            else {
-                cellValue = decimalFormat.format((cell.getNumericCellValue()));
-            }
+            cellValue = formatNumeric(cell.getNumericCellValue(), HSSFDateUtil.isCellDateFormatted(cell));
         }
         else if(cell.getCellType() == Cell.CELL_TYPE_BLANK) {
             cellValue = "";
@@ -294,6 +465,19 @@ public class MsUtils {
         return cellValue;
     }
 
+    /**
+     * 数字单元格的字符串值，日期格式输出MM/dd/yyyy，其余保留一位小数，格式化工具按线程复用
+     * @param d 数值
+     * @param isDateFormat 单元格样式是否为日期格式
+     * @return 字符串值
+     */
+    public static String formatNumeric(double d, boolean isDateFormat){
+        if(isDateFormat) {
+            return DATE_FORMAT.get().format(HSSFDateUtil.getJavaDate(d));
+        }
+        return DECIMAL_FORMAT.get().format(d);
+    }
+
     /**
      * 避免空指针异常获取行
      * @param sheet 工作簿
@@ -0,0 +1,264 @@
+package com.github.lisdocument.msio.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 可溢出到磁盘的long集合，用于大量指纹的一次性去重
+ * 元素先放入内存中的LongHashSet，槽数组超过内存上限时将全部元素排序后写入临时文件（一个有序段）并清空内存，
+ * 判断元素是否存在时依次在内存集合及各有序段中查找，有序段通过内存映射读取，
+ * 每段在内存中保留每FENCE_STEP个元素中的第一个作为索引，先在索引中二分定位，之后只需在映射中的一页内二分，
+ * 段数超过MAX_RUNS时合并为一段，避免查找时访问过多的段
+ * 不是线程安全的，使用完毕后需要close删除临时文件
+ * @author Libin
+ * @version 1.0.2
+ */
+public final class SpillableLongSet implements Closeable {
+
+    /**
+     * 有序段的索引间隔，512个long为4KB，与一页的大小一致
+     */
+    private static final int FENCE_STEP = 512;
+
+    private static final int MAX_RUNS = 8;
+
+    /**
+     * 单个有序段的最大元素数，映射的大小不能超过Integer.MAX_VALUE字节
+     */
+    private static final long MAX_RUN_SIZE = Integer.MAX_VALUE >> 3;
+
+    private final long memoryBytes;
+
+    private final LongHashSet memory = new LongHashSet();
+
+    /**
+     * 内存集合中允许的最大元素数，超过后溢出
+     */
+    private final int memoryLimit;
+
+    private final List<Run> runs = new ArrayList<>();
+
+    private long size;
+
+    /**
+     * @param memoryBytes 内存集合的上限（字节），小于等于0时不溢出
+     */
+    public SpillableLongSet(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+        //达到上限时在扩容之前溢出，槽数组不会超过内存上限（上限小于默认容量时按默认容量计算）
+        this.memoryLimit = memoryBytes > 0 ? LongHashSet.maxSizeWithin(memoryBytes) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 加入元素
+     * @param value 元素
+     * @return 集合中原先不存在该元素时为true
+     * @throws UncheckedIOException 溢出或读取临时文件失败
+     */
+    public boolean add(long value){
+        if(memory.contains(value)){
+            return false;
+        }
+        for (Run run : runs) {
+            if(run.contains(value)){
+                return false;
+            }
+        }
+        memory.add(value);
+        size ++;
+        if(memory.size() >= memoryLimit){
+            spill();
+        }
+        return true;
+    }
+
+    /**
+     * @return 集合中的元素数
+     */
+    public long size(){
+        return size;
+    }
+
+    /**
+     * @return 溢出到磁盘的有序段数
+     */
+    public int getRunCount(){
+        return runs.size();
+    }
+
+    /**
+     * @return 内存上限（字节），小于等于0为不限制
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * 删除所有临时文件
+     */
+    @Override
+    public void close(){
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        memory.clear();
+    }
+
+    private void spill(){
+        long[] values = memory.toSortedArray();
+        memory.clear();
+        try {
+            runs.add(Run.write(values.length, new SortedSource() {
+                private int index;
+
+                @Override
+                public long next() {
+                    return values[index ++];
+                }
+            }));
+            if(runs.size() > MAX_RUNS){
+                merge();
+            }
+        }catch (IOException e){
+            throw new UncheckedIOException("去重指纹溢出到磁盘失败", e);
+        }
+    }
+
+    /**
+     * 将全部有序段归并为一段，合并后超过单段上限时保留原样
+     */
+    private void merge() throws IOException {
+        long total = 0;
+        for (Run run : runs) {
+            total += run.size;
+        }
+        if(total > MAX_RUN_SIZE){
+            return;
+        }
+        int count = runs.size();
+        int[] positions = new int[count];
+        Run merged = Run.write(total, () -> {
+            int min = -1;
+            long minValue = 0;
+            for (int i = 0; i < count; i++) {
+                Run run = runs.get(i);
+                if(positions[i] < run.size){
+                    long value = run.values.get(positions[i]);
+                    if(min < 0 || value < minValue){
+                        min = i;
+                        minValue = value;
+                    }
+                }
+            }
+            positions[min] ++;
+            return minValue;
+        });
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        runs.add(merged);
+    }
+
+    /**
+     * 按升序依次提供元素
+     */
+    @FunctionalInterface
+    private interface SortedSource {
+        long next();
+    }
+
+    /**
+     * 一个有序段
+     */
+    private static final class Run {
+
+        private final File file;
+
+        private final LongBuffer values;
+
+        private final int size;
+
+        /**
+         * 每FENCE_STEP个元素中的第一个
+         */
+        private final long[] fences;
+
+        private Run(File file, LongBuffer values, int size) {
+            this.file = file;
+            this.values = values;
+            this.size = size;
+            this.fences = new long[(size + FENCE_STEP - 1) / FENCE_STEP];
+            for (int i = 0; i < fences.length; i++) {
+                fences[i] = values.get(i * FENCE_STEP);
+            }
+        }
+
+        private static Run write(long size, SortedSource source) throws IOException {
+            File file = File.createTempFile("msio", ".run");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))){
+                    for (long i = 0; i < size; i++) {
+                        out.writeLong(source.next());
+                    }
+                }
+                LongBuffer values;
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                     FileChannel channel = randomAccessFile.getChannel()){
+                    //映射在通道关闭后依然有效
+                    values = channel.map(FileChannel.MapMode.READ_ONLY, 0, size << 3).asLongBuffer();
+                }
+                return new Run(file, values, (int) size);
+            }catch (IOException | RuntimeException e){
+                if(!file.delete()){
+                    file.deleteOnExit();
+                }
+                throw e;
+            }
+        }
+
+        private boolean contains(long value){
+            if(0 == size || value < fences[0]){
+                return false;
+            }
+            //最后一个不大于value的索引所在的块
+            int block = Arrays.binarySearch(fences, value);
+            if(block >= 0){
+                return true;
+            }
+            block = -block - 2;
+            int low = block * FENCE_STEP;
+            int high = Math.min(size, low + FENCE_STEP) - 1;
+            while (low <= high){
+                int middle = (low + high) >>> 1;
+                long current = values.get(middle);
+                if(current < value){
+                    low = middle + 1;
+                }else if(current > value){
+                    high = middle - 1;
+                }else{
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void delete(){
+            if(!file.delete()){
+                file.deleteOnExit();
+            }
+        }
+    }
+}